@@ -0,0 +1,299 @@
+/*
+ * Copyright (C) 2021 CGA Technologies, a trading name of Charlie Goldsmith Associates Ltd
+ *  All rights reserved, released under the BSD-3 licence.
+ *
+ * CGA Technologies develop and use this software as part of its work
+ *  but the software itself is open-source software; you can redistribute it and/or modify
+ *  it under the terms of the BSD licence below
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice, this
+ *     list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *  3. Neither the name of the copyright holder nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *  THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *  PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS
+ *  BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ *  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ *  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ *  LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ *  OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ *  DAMAGE.
+ *
+ * For more information please see http://opensource.org/licenses/BSD-3-Clause
+ */
+
+package org.cga.sctp.api.audit;
+
+import com.google.gson.stream.JsonWriter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.cga.sctp.api.config.AuditConfiguration;
+import org.cga.sctp.api.core.BaseComponent;
+import org.cga.sctp.api.utils.DateUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Collapses repeated success events into aggregate rows.</p>
+ * <p>Success events matching one of the {@code audit.aggregation.policies} are counted in a window per event type,
+ * reason and user. The first {@code keep_first} events of a window are written as usual; the rest are only counted,
+ * and written as one row when the window closes, {@code audit.aggregation.window} seconds after its first event. The
+ * row holds the number of collapsed events, the time of the first and last of them and their distinct IP
+ * addresses. Failures are always written individually.</p>
+ * <p>Open windows only live in memory. Those still open at shutdown are written then; a crash loses them.</p>
+ */
+@Component
+public class AuditAggregator extends BaseComponent {
+
+    private final AuditLogWriter writer;
+    private final boolean enabled;
+    private final long windowMillis;
+    private final int maxWindows;
+    private final int maxAddresses;
+    private final List<AuditConfiguration.AggregationPolicy> policies;
+    private final ConcurrentHashMap<Key, Window> windows;
+
+    private final Counter collapsedCounter;
+    private final Counter overflowCounter;
+
+    @Autowired
+    public AuditAggregator(AuditConfiguration auditConfiguration, AuditLogWriter writer, MeterRegistry registry) {
+        final AuditConfiguration.AggregationConfig config = auditConfiguration.getAggregation();
+
+        this.writer = writer;
+        this.enabled = config.isEnabled() && !config.getPolicies().isEmpty();
+        this.windowMillis = TimeUnit.SECONDS.toMillis(config.getWindow());
+        this.maxWindows = config.getMaxWindows();
+        this.maxAddresses = config.getMaxAddresses();
+        this.policies = List.copyOf(config.getPolicies());
+        this.windows = new ConcurrentHashMap<>();
+
+        this.collapsedCounter = Counter.builder("audit.aggregation.collapsed").register(registry);
+        this.overflowCounter = Counter.builder("audit.aggregation.overflow").register(registry);
+        Gauge.builder("audit.aggregation.windows", windows, Map::size).register(registry);
+    }
+
+    /**
+     * Count the event in its window if a policy applies to it.
+     *
+     * @param event Event
+     * @return true if the event was collapsed and must not be written on its own
+     */
+    public boolean offer(AuditEvent event) {
+        final AuditConfiguration.AggregationPolicy policy;
+
+        if (!enabled || !event.isSuccess() || (policy = findPolicy(event)) == null) {
+            return false;
+        }
+
+        final Key key = new Key(event.getEventType(), event.getReason(), event.getPrincipal());
+        final long time = event.getTimestamp();
+
+        while (true) {
+            Window window = windows.get(key);
+            if (window == null) {
+                if (windows.size() >= maxWindows) {
+                    overflowCounter.increment();
+                    return false;
+                }
+                window = windows.computeIfAbsent(key, k -> new Window(time));
+            }
+            synchronized (window) {
+                // Closed by a flush after it was looked up
+                if (window.closed) {
+                    continue;
+                }
+                if (window.kept < policy.getKeepFirst()) {
+                    window.kept++;
+                    return false;
+                }
+                window.add(time, event.getAddress(), maxAddresses);
+            }
+            collapsedCounter.increment();
+            return true;
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${audit.aggregation.flush_interval}")
+    public void flush() {
+        close(System.currentTimeMillis() - windowMillis);
+    }
+
+    @PreDestroy
+    public void flushAll() {
+        close(Long.MAX_VALUE);
+    }
+
+    /**
+     * Close all windows started before the given time and queue their aggregate rows.
+     *
+     * @param startedBefore Time in milliseconds since epoch
+     */
+    private synchronized void close(long startedBefore) {
+        int written = 0;
+
+        for (Map.Entry<Key, Window> entry : windows.entrySet()) {
+            final Window window = entry.getValue();
+            if (window.start >= startedBefore) {
+                continue;
+            }
+            synchronized (window) {
+                window.closed = true;
+            }
+            windows.remove(entry.getKey(), window);
+            if (window.count > 0) {
+                writer.enqueue(toLog(entry.getKey(), window));
+                written++;
+            }
+        }
+
+        if (written > 0) {
+            LOG.debug("Wrote {} aggregate audit rows.", written);
+        }
+    }
+
+    private AuditConfiguration.AggregationPolicy findPolicy(AuditEvent event) {
+        for (AuditConfiguration.AggregationPolicy policy : policies) {
+            if (policy.getEventType() == event.getEventType()
+                    && (policy.getReason() == null || policy.getReason().equals(event.getReason()))) {
+                return policy;
+            }
+        }
+        return null;
+    }
+
+    private static AuditEventLog toLog(Key key, Window window) {
+        final AuditEventLog log = new AuditEventLog();
+        log.setArchived(false);
+        log.setEventType(key.eventType);
+        log.setCreatedAt(toLocalDateTime(window.first));
+        log.setLogData(toLogData(key, window));
+        return log;
+    }
+
+    /**
+     * The user, reason and (single) IP address use the same properties as individual events, so aggregate rows are
+     * found by the same searches.
+     */
+    private static String toLogData(Key key, Window window) {
+        final StringWriter json = new StringWriter(256);
+        try (JsonWriter writer = new JsonWriter(json)) {
+            writer.beginObject();
+            writer.name("aggregate").value(true);
+            writer.name("user").value(key.principal);
+            writer.name("reason").value(key.reason);
+            writer.name("count").value(window.count);
+            writer.name("first").value(DateUtils.formatDateAsIsoString(toLocalDateTime(window.first)));
+            writer.name("last").value(DateUtils.formatDateAsIsoString(toLocalDateTime(window.last)));
+            if (window.addresses.size() == 1 && !window.addressesTruncated) {
+                writer.name("ip").value(window.addresses.iterator().next());
+            }
+            writer.name("ips").beginArray();
+            for (String address : window.addresses) {
+                writer.value(address);
+            }
+            writer.endArray();
+            writer.name("ips_truncated").value(window.addressesTruncated);
+            writer.endObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return json.toString();
+    }
+
+    private static LocalDateTime toLocalDateTime(long millis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+    }
+
+    private static final class Key {
+        private final EventType eventType;
+        private final String reason;
+        private final String principal;
+        private final int hash;
+
+        private Key(EventType eventType, String reason, String principal) {
+            this.eventType = eventType;
+            this.reason = reason;
+            this.principal = principal;
+            this.hash = Objects.hash(eventType, reason, principal);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key key = (Key) o;
+            return eventType == key.eventType
+                    && Objects.equals(reason, key.reason)
+                    && Objects.equals(principal, key.principal);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * Guarded by its own monitor.
+     */
+    private static final class Window {
+        private final long start;
+        private final Set<String> addresses = new LinkedHashSet<>();
+        private boolean addressesTruncated;
+        private boolean closed;
+        private int kept;
+        private long count;
+        private long first;
+        private long last;
+
+        private Window(long start) {
+            this.start = start;
+        }
+
+        private void add(long time, String address, int maxAddresses) {
+            if (count == 0) {
+                first = last = time;
+            } else {
+                first = Math.min(first, time);
+                last = Math.max(last, time);
+            }
+            count++;
+            if (address != null && !addresses.contains(address)) {
+                if (addresses.size() < maxAddresses) {
+                    addresses.add(address);
+                } else {
+                    addressesTruncated = true;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,383 @@
+/*
+ * Copyright (C) 2021 CGA Technologies, a trading name of Charlie Goldsmith Associates Ltd
+ *  All rights reserved, released under the BSD-3 licence.
+ *
+ * CGA Technologies develop and use this software as part of its work
+ *  but the software itself is open-source software; you can redistribute it and/or modify
+ *  it under the terms of the BSD licence below
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice, this
+ *     list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *  3. Neither the name of the copyright holder nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *  THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *  PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS
+ *  BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ *  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ *  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ *  LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ *  OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ *  DAMAGE.
+ *
+ * For more information please see http://opensource.org/licenses/BSD-3-Clause
+ */
+
+package org.cga.sctp.api.audit;
+
+import com.google.gson.JsonParser;
+import org.cga.sctp.api.config.AuditConfiguration;
+import org.cga.sctp.api.core.BaseComponent;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.*;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * <p>Maintains the monthly partitions of {@code event_logs}.</p>
+ * <p>Partitions are named {@code pYYYYMM} after the month they hold and are split off the {@code p_future} partition
+ * ahead of time. Partitions older than the retention period are exchanged into a staging table, streamed from there
+ * to a gzip compressed NDJSON file, one object per row, and dropped once the file is verified to hold every row.
+ * Dropping a partition is a metadata operation, unlike deleting its rows. A run that fails part way is resumed from
+ * the staging table by the next one.</p>
+ * <p>Runs on one node at a time, guarded by a MySQL named lock. Archive files are written on that node.</p>
+ */
+@Component
+public class AuditArchiver extends BaseComponent {
+
+    private static final String LOCK_NAME = "event_logs_archiver";
+    private static final String FUTURE_PARTITION = "p_future";
+    private static final String STAGING_PREFIX = "event_logs_archive_";
+    /**
+     * Times a partition is archived again in one run when rows were added to it meanwhile.
+     */
+    private static final int MAX_ROUNDS = 3;
+    private static final DateTimeFormatter PARTITION_MONTH = DateTimeFormatter.ofPattern("'p'yyyyMM");
+
+    private static final String PARTITIONS_SQL = "SELECT PARTITION_NAME FROM information_schema.PARTITIONS " +
+            "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'event_logs' AND PARTITION_NAME IS NOT NULL " +
+            "ORDER BY PARTITION_ORDINAL_POSITION";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private AuditConfiguration auditConfiguration;
+
+    @Scheduled(cron = "${audit.archive.cron}")
+    public void run() {
+        final AuditConfiguration.ArchiveConfig config = auditConfiguration.getArchive();
+        if (!config.isEnabled()) {
+            return;
+        }
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            if (!acquireLock(connection)) {
+                LOG.debug("Audit archiver is running on another node.");
+                return null;
+            }
+            try {
+                maintain(connection, config);
+            } catch (IOException e) {
+                LOG.error("Audit archiving failed.", e);
+            } finally {
+                releaseLock(connection);
+            }
+            return null;
+        });
+    }
+
+    private void maintain(Connection connection, AuditConfiguration.ArchiveConfig config) throws SQLException, IOException {
+        final List<String> partitions = getPartitions(connection);
+        if (!partitions.contains(FUTURE_PARTITION)) {
+            LOG.warn("event_logs is not partitioned by month. Nothing to archive.");
+            return;
+        }
+
+        final YearMonth current = YearMonth.now();
+        final YearMonth last = current.plusMonths(Math.max(0, config.getMonthsAhead()));
+        YearMonth month = lastMonth(partitions);
+        month = month == null ? current : month.plusMonths(1);
+        for (; !month.isAfter(last); month = month.plusMonths(1)) {
+            addPartition(connection, month);
+        }
+
+        final YearMonth oldestKept = current.minusMonths(Math.max(1, config.getRetentionMonths()));
+        final Path directory = Paths.get(config.getDirectory());
+        Files.createDirectories(directory);
+        for (String partition : partitions) {
+            final YearMonth partitionMonth = monthOf(partition);
+            if (partitionMonth != null && partitionMonth.isBefore(oldestKept)) {
+                if (!archive(connection, partition, directory)) {
+                    // Partitions must go in order, the next one would take this one's rows
+                    break;
+                }
+            }
+        }
+    }
+
+    private static List<String> getPartitions(Connection connection) throws SQLException {
+        final List<String> partitions = new ArrayList<>();
+        try (Statement statement = connection.createStatement(); ResultSet rs = statement.executeQuery(PARTITIONS_SQL)) {
+            while (rs.next()) {
+                partitions.add(rs.getString(1));
+            }
+        }
+        return partitions;
+    }
+
+    private static YearMonth monthOf(String partition) {
+        try {
+            return YearMonth.parse(partition, PARTITION_MONTH);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static YearMonth lastMonth(List<String> partitions) {
+        YearMonth last = null;
+        for (String partition : partitions) {
+            final YearMonth month = monthOf(partition);
+            if (month != null && (last == null || month.isAfter(last))) {
+                last = month;
+            }
+        }
+        return last;
+    }
+
+    private void addPartition(Connection connection, YearMonth month) throws SQLException {
+        final String name = PARTITION_MONTH.format(month);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(String.format("ALTER TABLE event_logs REORGANIZE PARTITION %s INTO (" +
+                            "PARTITION %s VALUES LESS THAN (UNIX_TIMESTAMP('%s-01 00:00:00')), " +
+                            "PARTITION %s VALUES LESS THAN MAXVALUE)",
+                    FUTURE_PARTITION, name, month.plusMonths(1), FUTURE_PARTITION));
+        }
+        LOG.info("Added event_logs partition {}.", name);
+    }
+
+    /**
+     * Archive a partition and drop it. The partition's rows are first swapped into a staging table with
+     * {@code EXCHANGE PARTITION}, which is atomic, and archived from there. Rows inserted into the partition meanwhile,
+     * e.g. replayed from a spool, stay in the (then otherwise empty) partition and are archived in another round. The
+     * partition is only dropped while the table is locked and the partition is found empty.
+     *
+     * @return true if the partition was archived and dropped
+     */
+    private boolean archive(Connection connection, String partition, Path directory) throws SQLException, IOException {
+        for (int round = 0; round < MAX_ROUNDS; round++) {
+            if (!archiveStaging(connection, partition, directory)) {
+                return false;
+            }
+            if (dropIfEmpty(connection, partition)) {
+                return true;
+            }
+            LOG.info("Rows were added to partition {} while it was archived. Archiving them as well.", partition);
+        }
+        LOG.warn("Partition {} keeps receiving rows. Retrying next run.", partition);
+        return false;
+    }
+
+    /**
+     * Move the partition's rows into its staging table, unless a previous run left the table behind, then write the
+     * table to an archive file and drop it.
+     *
+     * @return false if the rows could not be archived. The staging table is kept for the next run
+     */
+    private boolean archiveStaging(Connection connection, String partition, Path directory) throws SQLException, IOException {
+        final String staging = STAGING_PREFIX + partition;
+
+        if (!tableExists(connection, staging)) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("CREATE TABLE " + staging + " LIKE event_logs");
+                statement.execute("ALTER TABLE " + staging + " REMOVE PARTITIONING");
+                statement.execute("ALTER TABLE event_logs EXCHANGE PARTITION " + partition + " WITH TABLE " + staging);
+            }
+        } else {
+            LOG.info("Resuming archiving of partition {} from {}.", partition, staging);
+        }
+
+        final RowStats rows = tableStats(connection, staging);
+        if (rows.count > 0) {
+            final Path file = directory.resolve("event_logs-" + partition + "-" + rows.minId + ".ndjson.gz");
+            final Path legacyFile = directory.resolve("event_logs-" + partition + ".ndjson.gz");
+            final Path existing = Files.exists(file) ? file : Files.exists(legacyFile) ? legacyFile : null;
+
+            if (existing != null) {
+                // Written by a run that failed before dropping the staging table
+                if (!rows.equals(fileStats(existing))) {
+                    LOG.error("Archive file {} does not match the {} rows in {}. Partition {} is not archived.",
+                            existing, rows.count, staging, partition);
+                    return false;
+                }
+            } else {
+                final Path temp = directory.resolve(file.getFileName() + ".tmp");
+                export(connection, staging, temp);
+                if (!rows.equals(fileStats(temp))) {
+                    LOG.error("Archive file {} does not hold the {} rows in {}. Partition {} is not archived.",
+                            temp, rows.count, staging, partition);
+                    Files.deleteIfExists(temp);
+                    return false;
+                }
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+                LOG.info("Archived {} event_logs rows of partition {} to {}.", rows.count, partition, file);
+            }
+        }
+
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE " + staging);
+        }
+        return true;
+    }
+
+    /**
+     * @return true if the partition was empty and is dropped
+     */
+    private static boolean dropIfEmpty(Connection connection, String partition) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            // Holds off inserts between the check and the drop
+            statement.execute("LOCK TABLES event_logs WRITE");
+            try {
+                try (ResultSet rs = statement.executeQuery(
+                        "SELECT EXISTS (SELECT 1 FROM event_logs PARTITION (" + partition + "))")) {
+                    rs.next();
+                    if (rs.getBoolean(1)) {
+                        return false;
+                    }
+                }
+                statement.execute("ALTER TABLE event_logs DROP PARTITION " + partition);
+                return true;
+            } finally {
+                statement.execute("UNLOCK TABLES");
+            }
+        }
+    }
+
+    private static boolean tableExists(Connection connection, String table) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT 1 FROM information_schema.TABLES " +
+                "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ?")) {
+            statement.setString(1, table);
+            try (ResultSet rs = statement.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    private static void export(Connection connection, String table, Path file) throws SQLException, IOException {
+        try (Statement statement = connection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            // Makes MySQL stream the rows instead of loading the whole table into memory
+            statement.setFetchSize(Integer.MIN_VALUE);
+            try (ResultSet rs = statement.executeQuery("SELECT id, archived, event_type, created_at, log_data " +
+                    "FROM " + table + " ORDER BY id");
+                 Writer out = new BufferedWriter(new OutputStreamWriter(
+                         new GZIPOutputStream(Files.newOutputStream(file), 64 * 1024), StandardCharsets.UTF_8))) {
+                while (rs.next()) {
+                    AuditExportFormat.ndjson.writeRow(rs, out);
+                }
+            }
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+    }
+
+    private static RowStats tableStats(Connection connection, String table) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT COUNT(*), COALESCE(MIN(id), 0), COALESCE(MAX(id), 0) FROM " + table)) {
+            rs.next();
+            return new RowStats(rs.getLong(1), rs.getLong(2), rs.getLong(3));
+        }
+    }
+
+    /**
+     * Read back an archive file.
+     */
+    private RowStats fileStats(Path file) throws IOException {
+        long count = 0;
+        long minId = 0;
+        long maxId = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(Files.newInputStream(file)), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final long id = JsonParser.parseString(line).getAsJsonObject().get("id").getAsLong();
+                minId = count == 0 ? id : Math.min(minId, id);
+                maxId = count == 0 ? id : Math.max(maxId, id);
+                count++;
+            }
+        } catch (RuntimeException e) {
+            LOG.warn("Cannot read archive file {}: {}", file, e.toString());
+            return new RowStats(-1, 0, 0);
+        }
+        return new RowStats(count, minId, maxId);
+    }
+
+    private static final class RowStats {
+        private final long count;
+        private final long minId;
+        private final long maxId;
+
+        private RowStats(long count, long minId, long maxId) {
+            this.count = count;
+            this.minId = minId;
+            this.maxId = maxId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof RowStats)) {
+                return false;
+            }
+            final RowStats other = (RowStats) o;
+            return count == other.count && minId == other.minId && maxId == other.maxId;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(count, minId, maxId);
+        }
+    }
+
+    private static boolean acquireLock(Connection connection) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT GET_LOCK(?, 0)")) {
+            statement.setString(1, LOCK_NAME);
+            try (ResultSet rs = statement.executeQuery()) {
+                return rs.next() && rs.getInt(1) == 1;
+            }
+        }
+    }
+
+    private static void releaseLock(Connection connection) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT RELEASE_LOCK(?)")) {
+            statement.setString(1, LOCK_NAME);
+            statement.executeQuery().close();
+        }
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2021 CGA Technologies, a trading name of Charlie Goldsmith Associates Ltd
+ *  All rights reserved, released under the BSD-3 licence.
+ *
+ * CGA Technologies develop and use this software as part of its work
+ *  but the software itself is open-source software; you can redistribute it and/or modify
+ *  it under the terms of the BSD licence below
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice, this
+ *     list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *  3. Neither the name of the copyright holder nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *  THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *  PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS
+ *  BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ *  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ *  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ *  LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ *  OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ *  DAMAGE.
+ *
+ * For more information please see http://opensource.org/licenses/BSD-3-Clause
+ */
+
+package org.cga.sctp.api.audit;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.cga.sctp.api.core.ApiErrors;
+import org.cga.sctp.api.core.IncludeGeneralResponses;
+import org.cga.sctp.api.core.RequiresPermission;
+import org.cga.sctp.api.config.AuditConfiguration;
+import org.cga.sctp.api.core.SecuredController;
+import org.cga.sctp.api.security.access_control.UserPermissions;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.WebAsyncTask;
+
+import javax.servlet.http.HttpServletResponse;
+import java.time.LocalDateTime;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+
+@RestController
+@RequestMapping("/audit")
+@Tag(name = "Audit", description = "Endpoint for reading the audit log.")
+public class AuditController extends SecuredController {
+
+    private static final int DEFAULT_LIMIT = 50;
+    private static final int MAX_LIMIT = 500;
+
+    @Autowired
+    private AuditService auditService;
+
+    @Autowired
+    private AuditConfiguration auditConfiguration;
+
+    @GetMapping("/events")
+    @Operation(description = "Search audit events, newest first. Pass the returned next cursor to get the following page.")
+    @ApiResponses({
+            @ApiResponse(responseCode = "400", description = "Invalid cursor or limit.", content = @Content)
+    })
+    @IncludeGeneralResponses
+    @RequiresPermission(UserPermissions.VIEW_AUDIT_LOGS)
+    public ResponseEntity<?> searchEvents(
+            @RequestParam(value = "eventType", required = false) EventType eventType,
+            @RequestParam(value = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(value = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(value = "user", required = false) String user,
+            @RequestParam(value = "ip", required = false) String ip,
+            @RequestParam(value = "reason", required = false) String reason,
+            @RequestParam(value = "limit", defaultValue = "" + DEFAULT_LIMIT) int limit,
+            @RequestParam(value = "cursor", required = false) String cursor) {
+        final AuditSearchCriteria criteria = new AuditSearchCriteria();
+
+        if (limit < 1 || limit > MAX_LIMIT) {
+            return ResponseEntity.badRequest().body(ApiErrors.addFieldError(null, "limit",
+                    format("Limit must be between 1 and %d.", MAX_LIMIT)));
+        }
+        if (cursor != null && !criteria.setCursor(cursor)) {
+            return ResponseEntity.badRequest().body(ApiErrors.addFieldError(null, "cursor", "Invalid cursor."));
+        }
+
+        criteria.setEventType(eventType);
+        criteria.setFrom(from);
+        criteria.setTo(to);
+        criteria.setUser(user);
+        criteria.setIp(ip);
+        criteria.setReason(reason);
+        criteria.setLimit(limit);
+
+        return ResponseEntity.ok(auditService.search(criteria));
+    }
+
+    @GetMapping("/events/export")
+    @Operation(description = "Export all audit events matching the filters, oldest first, as NDJSON or CSV. The response is streamed and gzip compressed when the client accepts it.")
+    @ApiResponses({
+            @ApiResponse(responseCode = "503", description = "Too many exports are running. Retry later.", content = @Content)
+    })
+    @IncludeGeneralResponses
+    @RequiresPermission(UserPermissions.VIEW_AUDIT_LOGS)
+    public WebAsyncTask<Void> exportEvents(
+            @RequestParam(value = "eventType", required = false) EventType eventType,
+            @RequestParam(value = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(value = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(value = "user", required = false) String user,
+            @RequestParam(value = "ip", required = false) String ip,
+            @RequestParam(value = "reason", required = false) String reason,
+            @RequestParam(value = "format", defaultValue = "ndjson") AuditExportFormat exportFormat,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+            HttpServletResponse response) {
+        final AuditSearchCriteria criteria = new AuditSearchCriteria();
+        final boolean gzip = acceptsGzip(acceptEncoding);
+
+        criteria.setEventType(eventType);
+        criteria.setFrom(from);
+        criteria.setTo(to);
+        criteria.setUser(user);
+        criteria.setIp(ip);
+        criteria.setReason(reason);
+
+        // The export slot is taken and freed on the thread writing the export, so it is returned however the request
+        // ends. Nothing is written before the slot is taken, so the status can still be changed to 503
+        return new WebAsyncTask<>(auditConfiguration.getExport().getTimeout(), () -> {
+            if (!auditService.tryBeginExport()) {
+                response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+                return null;
+            }
+            try {
+                response.setContentType(exportFormat.getContentType());
+                response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+                        format("attachment; filename=\"audit-events.%s\"", exportFormat.getExtension()));
+                response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+                if (gzip) {
+                    response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+                    final GZIPOutputStream gzipOutput = new GZIPOutputStream(response.getOutputStream(), 8192);
+                    auditService.export(criteria, exportFormat, gzipOutput);
+                    gzipOutput.finish();
+                } else {
+                    auditService.export(criteria, exportFormat, response.getOutputStream());
+                }
+            } finally {
+                auditService.endExport();
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Whether the Accept-Encoding header accepts gzip, by name or through {@code *}, with a quality above zero.
+     *
+     * @param acceptEncoding Accept-Encoding header or null
+     * @return .
+     */
+    static boolean acceptsGzip(String acceptEncoding) {
+        double gzip = -1;
+        double any = -1;
+
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            final String[] parameters = coding.split(";");
+            final String name = parameters[0].trim().toLowerCase(Locale.ROOT);
+            double quality = 1;
+            for (int i = 1; i < parameters.length; i++) {
+                final String parameter = parameters[i].trim();
+                if (parameter.regionMatches(true, 0, "q=", 0, 2)) {
+                    try {
+                        quality = Double.parseDouble(parameter.substring(2).trim());
+                    } catch (NumberFormatException e) {
+                        quality = 0;
+                    }
+                }
+            }
+            if (name.equals("gzip") || name.equals("x-gzip")) {
+                gzip = Math.max(gzip, quality);
+            } else if (name.equals("*")) {
+                any = Math.max(any, quality);
+            }
+        }
+        // A coding named explicitly overrides the wildcard
+        return gzip >= 0 ? gzip > 0 : any > 0;
+    }
+}
@@ -36,9 +36,12 @@
 package org.cga.sctp.api.audit;
 
 import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
 import org.springframework.context.ApplicationEvent;
 
-import java.util.Map;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 
 public class AuditEvent extends ApplicationEvent {
     private final EventType eventType;
@@ -59,13 +62,94 @@ public class AuditEvent extends ApplicationEvent {
         return eventType;
     }
 
+    /**
+     * @return Whether the event records a successful action. Only successes may be aggregated
+     * @see AuditAggregator
+     */
+    public boolean isSuccess() {
+        return false;
+    }
+
+    /**
+     * @return Short description of the outcome, or null
+     */
+    public String getReason() {
+        return null;
+    }
+
+    /**
+     * @return Name of the user the event is about, or null
+     */
+    public String getPrincipal() {
+        return null;
+    }
+
+    /**
+     * @return IP address the event originated from, or null
+     */
+    public String getAddress() {
+        return null;
+    }
+
+    /**
+     * Write contextual log data properties as a JSON object. By default, this is the source serialized with the
+     * given Gson instance; subclasses write their properties directly.
+     *
+     * @param gson   Gson instance for values that need a type adapter
+     * @param writer Writer positioned where the object is expected
+     * @throws IOException .
+     */
+    public void writeLogData(Gson gson, JsonWriter writer) throws IOException {
+        gson.toJson(source, source.getClass(), writer);
+    }
+
     /**
      * Get contextual log data properties
      *
-     * @return .
+     * @return The properties as a JSON object, stored in {@code event_logs.log_data} as is.
      */
-    @SuppressWarnings("unchecked")
-    public Map<String, Object> getLogData(Gson gson) {
-        return gson.fromJson(gson.toJson(source), Map.class);
+    public final String getLogData(Gson gson) {
+        final StringBuilderWriter json = new StringBuilderWriter(256);
+        try {
+            writeLogData(gson, new JsonWriter(json));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return json.builder.toString();
+    }
+
+    /**
+     * {@link java.io.StringWriter} without the synchronization of its {@link StringBuffer}. {@link JsonWriter} writes
+     * in many small pieces.
+     */
+    private static final class StringBuilderWriter extends Writer {
+        private final StringBuilder builder;
+
+        private StringBuilderWriter(int capacity) {
+            this.builder = new StringBuilder(capacity);
+        }
+
+        @Override
+        public void write(int c) {
+            builder.append((char) c);
+        }
+
+        @Override
+        public void write(char[] buffer, int offset, int length) {
+            builder.append(buffer, offset, length);
+        }
+
+        @Override
+        public void write(String str, int offset, int length) {
+            builder.append(str, offset, offset + length);
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
     }
 }
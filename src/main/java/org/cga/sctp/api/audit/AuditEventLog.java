@@ -35,17 +35,13 @@
 
 package org.cga.sctp.api.audit;
 
-import com.vladmihalcea.hibernate.type.json.JsonType;
-import org.hibernate.annotations.Type;
-import org.hibernate.annotations.TypeDef;
+import com.fasterxml.jackson.annotation.JsonRawValue;
 
 import javax.persistence.*;
 import java.time.LocalDateTime;
-import java.util.Map;
 
 @Entity
 @Table(name = "event_logs")
-@TypeDef(name = "json", typeClass = JsonType.class)
 public class AuditEventLog {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -53,9 +49,12 @@ public class AuditEventLog {
     private boolean archived;
     private EventType eventType;
     private LocalDateTime createdAt;
-    @Type(type = "json")
+    /**
+     * JSON object, kept serialized. See {@link AuditEvent#getLogData(com.google.gson.Gson)}.
+     */
+    @JsonRawValue
     @Column(columnDefinition = "json")
-    private Map<String, Object> logData;
+    private String logData;
 
     public Long getId() {
         return id;
@@ -65,11 +64,11 @@ public class AuditEventLog {
         this.id = id;
     }
 
-    public Map<String, Object> getLogData() {
+    public String getLogData() {
         return logData;
     }
 
-    public void setLogData(Map<String, Object> logData) {
+    public void setLogData(String logData) {
         this.logData = logData;
     }
 
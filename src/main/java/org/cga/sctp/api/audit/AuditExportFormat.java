@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2021 CGA Technologies, a trading name of Charlie Goldsmith Associates Ltd
+ *  All rights reserved, released under the BSD-3 licence.
+ *
+ * CGA Technologies develop and use this software as part of its work
+ *  but the software itself is open-source software; you can redistribute it and/or modify
+ *  it under the terms of the BSD licence below
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice, this
+ *     list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *  3. Neither the name of the copyright holder nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *  THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *  PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS
+ *  BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ *  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ *  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ *  LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ *  OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ *  DAMAGE.
+ *
+ * For more information please see http://opensource.org/licenses/BSD-3-Clause
+ */
+
+package org.cga.sctp.api.audit;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Row formats for exporting {@code event_logs}. Rows are read from a result set by column label and written one per
+ * line.
+ */
+public enum AuditExportFormat {
+    /**
+     * One JSON object per line, with {@code log_data} embedded as is.
+     */
+    ndjson("application/x-ndjson", "ndjson") {
+        @Override
+        void writeHeader(Writer out) {
+        }
+
+        @Override
+        void writeRow(ResultSet rs, Writer out) throws SQLException, IOException {
+            final JsonWriter json = new JsonWriter(out);
+            json.beginObject();
+            json.name("id").value(rs.getLong("id"));
+            json.name("archived").value(rs.getBoolean("archived"));
+            json.name("eventType").value(eventTypeName(rs.getInt("event_type")));
+            json.name("createdAt").value(rs.getTimestamp("created_at").toLocalDateTime().toString());
+            json.name("logData").jsonValue(rs.getString("log_data"));
+            json.endObject();
+            out.write('\n');
+        }
+    },
+    /**
+     * RFC 4180 CSV with the searchable fields of {@code log_data} in their own columns. Requires the
+     * {@code log_user}, {@code log_ip} and {@code log_reason} columns.
+     */
+    csv("text/csv", "csv") {
+        @Override
+        void writeHeader(Writer out) throws IOException {
+            out.write("id,event_type,created_at,user,ip,reason,log_data\r\n");
+        }
+
+        @Override
+        void writeRow(ResultSet rs, Writer out) throws SQLException, IOException {
+            out.write(Long.toString(rs.getLong("id")));
+            out.write(',');
+            out.write(eventTypeName(rs.getInt("event_type")));
+            out.write(',');
+            out.write(rs.getTimestamp("created_at").toLocalDateTime().toString());
+            out.write(',');
+            writeField(rs.getString("log_user"), out);
+            out.write(',');
+            writeField(rs.getString("log_ip"), out);
+            out.write(',');
+            writeField(rs.getString("log_reason"), out);
+            out.write(',');
+            writeField(rs.getString("log_data"), out);
+            out.write("\r\n");
+        }
+
+        private void writeField(String value, Writer out) throws IOException {
+            if (value == null) {
+                return;
+            }
+            if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+                out.write(value);
+                return;
+            }
+            out.write('"');
+            for (int i = 0; i < value.length(); i++) {
+                final char c = value.charAt(i);
+                if (c == '"') {
+                    out.write('"');
+                }
+                out.write(c);
+            }
+            out.write('"');
+        }
+    };
+
+    private static final EventType[] EVENT_TYPES = EventType.values();
+
+    private final String contentType;
+    private final String extension;
+
+    AuditExportFormat(String contentType, String extension) {
+        this.contentType = contentType;
+        this.extension = extension;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    abstract void writeHeader(Writer out) throws IOException;
+
+    abstract void writeRow(ResultSet rs, Writer out) throws SQLException, IOException;
+
+    private static String eventTypeName(int eventType) {
+        return eventType < EVENT_TYPES.length ? EVENT_TYPES[eventType].name() : String.valueOf(eventType);
+    }
+}
@@ -0,0 +1,327 @@
+/*
+ * Copyright (C) 2021 CGA Technologies, a trading name of Charlie Goldsmith Associates Ltd
+ *  All rights reserved, released under the BSD-3 licence.
+ *
+ * CGA Technologies develop and use this software as part of its work
+ *  but the software itself is open-source software; you can redistribute it and/or modify
+ *  it under the terms of the BSD licence below
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice, this
+ *     list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *  3. Neither the name of the copyright holder nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *  THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *  PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS
+ *  BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ *  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ *  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ *  LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ *  OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ *  DAMAGE.
+ *
+ * For more information please see http://opensource.org/licenses/BSD-3-Clause
+ */
+
+package org.cga.sctp.api.audit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.cga.sctp.api.config.AuditConfiguration;
+import org.cga.sctp.api.core.BaseComponent;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <p>Write-behind buffer for {@code event_logs}.</p>
+ * <p>Publishers append to a bounded queue without taking locks or connections. A single writer thread drains the
+ * queue and writes up to {@code audit.writer.batch_size} rows per multi-row INSERT, as soon as a batch is full or
+ * when the oldest buffered event has waited {@code audit.writer.flush_interval} milliseconds. When the queue is full
+ * the event is dropped, after waiting for space first with the {@code block} policy.</p>
+ * <p>With the {@link AuditSpool} enabled, events are spooled before they are queued. Events that cannot be queued or
+ * written are then deferred rather than dropped, and replayed from the spool once the queue is idle.</p>
+ */
+@Component
+public class AuditLogWriter extends BaseComponent {
+
+    private static final String INSERT_SQL = "INSERT INTO event_logs (archived, event_type, created_at, log_data) VALUES ";
+    private static final String INSERT_ROW = "(?, ?, ?, ?)";
+    private static final int INSERT_COLUMNS = 4;
+
+    /**
+     * Interval at which a blocked publisher checks for queue space.
+     */
+    private static final long BLOCK_RETRY_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final AuditSpool spool;
+
+    private final int capacity;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final long blockTimeoutNanos;
+    private final AuditConfiguration.OverflowPolicy overflowPolicy;
+    private final long retryIntervalNanos;
+    private final String batchSql;
+
+    private final ConcurrentLinkedQueue<AuditSpool.Record> queue;
+    /**
+     * Number of queued events, including slots reserved by publishers that have not appended yet.
+     */
+    private final AtomicInteger size;
+    private final Thread writer;
+    private volatile boolean running;
+    private long replayAfter;
+
+    private final Counter droppedCounter;
+    private final Counter writtenCounter;
+    private final Counter failedCounter;
+    private final Timer flushTimer;
+
+    @Autowired
+    public AuditLogWriter(AuditConfiguration auditConfiguration, JdbcTemplate jdbcTemplate, AuditSpool spool,
+                          MeterRegistry registry) {
+        final AuditConfiguration.WriterConfig config = auditConfiguration.getWriter();
+
+        this.jdbcTemplate = jdbcTemplate;
+        this.spool = spool;
+        this.capacity = config.getQueueCapacity();
+        this.batchSize = Math.max(1, config.getBatchSize());
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(config.getFlushInterval());
+        this.blockTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(config.getBlockTimeout());
+        this.overflowPolicy = config.getOverflowPolicy();
+        this.retryIntervalNanos = TimeUnit.MILLISECONDS.toNanos(auditConfiguration.getSpool().getRetryInterval());
+        this.batchSql = insertSql(batchSize);
+        this.queue = new ConcurrentLinkedQueue<>();
+        this.size = new AtomicInteger();
+
+        this.droppedCounter = Counter.builder("audit.writer.dropped").register(registry);
+        this.writtenCounter = Counter.builder("audit.writer.written").register(registry);
+        this.failedCounter = Counter.builder("audit.writer.failed").register(registry);
+        this.flushTimer = Timer.builder("audit.writer.flush").register(registry);
+        Gauge.builder("audit.writer.queue.depth", size, AtomicInteger::get).register(registry);
+
+        this.replayAfter = System.nanoTime();
+        this.running = true;
+        this.writer = new Thread(this::drainLoop, "audit-log-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Queue an event log for writing.
+     *
+     * @param log Event log
+     * @return false if the event was not queued because the queue is full. It is written later if it was spooled
+     */
+    public boolean enqueue(AuditEventLog log) {
+        final AuditSpool.Record record = spool.append(log);
+        if (!running || !reserve()) {
+            if (record.isSpooled()) {
+                spool.defer(record);
+                LOG.debug("Audit queue is full ({} events). Deferred {} event.", capacity, log.getEventType());
+            } else {
+                droppedCounter.increment();
+                LOG.debug("Audit queue is full ({} events). Dropped {} event.", capacity, log.getEventType());
+            }
+            return false;
+        }
+        queue.offer(record);
+        if (size.get() >= batchSize) {
+            LockSupport.unpark(writer);
+        }
+        return true;
+    }
+
+    private boolean reserve() {
+        if (tryReserve()) {
+            return true;
+        }
+        if (overflowPolicy != AuditConfiguration.OverflowPolicy.BLOCK) {
+            return false;
+        }
+        final long deadline = System.nanoTime() + blockTimeoutNanos;
+        do {
+            // Make sure the writer is draining while we wait
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(this, BLOCK_RETRY_NANOS);
+            if (tryReserve()) {
+                return true;
+            }
+        } while (running && System.nanoTime() < deadline && !Thread.currentThread().isInterrupted());
+        return false;
+    }
+
+    private boolean tryReserve() {
+        for (; ; ) {
+            final int current = size.get();
+            if (current >= capacity) {
+                return false;
+            }
+            if (size.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    public int getQueueDepth() {
+        return size.get();
+    }
+
+    private void drainLoop() {
+        final List<AuditSpool.Record> batch = new ArrayList<>(batchSize);
+        long lastFlush = System.nanoTime();
+
+        while (running || size.get() > 0) {
+            final long waited = System.nanoTime() - lastFlush;
+            if (running && size.get() < batchSize && waited < flushIntervalNanos) {
+                LockSupport.parkNanos(this, flushIntervalNanos - waited);
+                continue;
+            }
+
+            // This is the only writer thread; nothing may end it
+            try {
+                if (!drain(batch)) {
+                    break;
+                }
+            } catch (RuntimeException e) {
+                LOG.error("Audit writer failed. Retrying in {} ms.",
+                        TimeUnit.NANOSECONDS.toMillis(flushIntervalNanos), e);
+                deferAll(batch);
+                replayAfter = System.nanoTime() + retryIntervalNanos;
+                LockSupport.parkNanos(this, flushIntervalNanos);
+            }
+            batch.clear();
+            lastFlush = System.nanoTime();
+        }
+    }
+
+    /**
+     * Write one batch from the queue, or replay deferred events if the queue is empty.
+     *
+     * @return false once the writer has stopped and there is nothing left to write
+     */
+    private boolean drain(List<AuditSpool.Record> batch) {
+        try {
+            spool.force();
+        } catch (RuntimeException e) {
+            // Events are still in the page cache and get written to the database regardless
+            LOG.warn("Failed to force the audit spool to disk.", e);
+        }
+
+        AuditSpool.Record record;
+        while (batch.size() < batchSize && (record = queue.poll()) != null) {
+            size.decrementAndGet();
+            batch.add(record);
+        }
+        if (batch.isEmpty() && !running) {
+            // Reserved slots whose events were never appended
+            return false;
+        }
+        if (!batch.isEmpty()) {
+            write(batch);
+        } else if (running && spool.hasDeferred() && System.nanoTime() - replayAfter >= 0) {
+            replayDeferred();
+        }
+        return true;
+    }
+
+    private void deferAll(List<AuditSpool.Record> batch) {
+        failedCounter.increment(batch.size());
+        for (AuditSpool.Record record : batch) {
+            try {
+                spool.defer(record);
+            } catch (RuntimeException e) {
+                LOG.warn("Failed to defer audit event.", e);
+            }
+        }
+    }
+
+    /**
+     * Write deferred events from the spool while the queue stays below a batch.
+     */
+    private void replayDeferred() {
+        List<AuditSpool.Record> records;
+        do {
+            records = spool.replay(batchSize);
+            if (!records.isEmpty() && !write(records)) {
+                return;
+            }
+        } while (running && !records.isEmpty() && size.get() < batchSize && spool.hasDeferred());
+    }
+
+    private boolean write(List<AuditSpool.Record> batch) {
+        final Object[] args = new Object[batch.size() * INSERT_COLUMNS];
+        int i = 0;
+        for (AuditSpool.Record record : batch) {
+            final AuditEventLog log = record.getLog();
+            args[i++] = log.isArchived();
+            args[i++] = log.getEventType().ordinal();
+            args[i++] = Timestamp.valueOf(log.getCreatedAt());
+            args[i++] = log.getLogData();
+        }
+
+        try {
+            flushTimer.record(() -> jdbcTemplate.update(
+                    batch.size() == batchSize ? batchSql : insertSql(batch.size()), args));
+            writtenCounter.increment(batch.size());
+            LOG.debug("Wrote {} audit events.", batch.size());
+        } catch (RuntimeException e) {
+            failedCounter.increment(batch.size());
+            batch.forEach(spool::defer);
+            replayAfter = System.nanoTime() + retryIntervalNanos;
+            LOG.warn("Failed to write {} audit events.{}", batch.size(),
+                    spool.isEnabled() ? " They remain in the spool." : "", e);
+            return false;
+        }
+        batch.forEach(spool::acknowledge);
+        return true;
+    }
+
+    private static String insertSql(int rows) {
+        final StringBuilder sql = new StringBuilder(INSERT_SQL.length() + rows * (INSERT_ROW.length() + 2));
+        sql.append(INSERT_SQL);
+        for (int i = 0; i < rows; i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append(INSERT_ROW);
+        }
+        return sql.toString();
+    }
+
+    /**
+     * Stop accepting events and write what is queued.
+     */
+    @PreDestroy
+    void shutdown() throws InterruptedException {
+        running = false;
+        LockSupport.unpark(writer);
+        writer.join(TimeUnit.SECONDS.toMillis(30));
+        if (writer.isAlive()) {
+            LOG.warn("Audit writer did not finish within 30 seconds. {} events not written.", size.get());
+        }
+    }
+}
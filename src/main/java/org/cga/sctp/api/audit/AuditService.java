@@ -36,36 +36,224 @@
 package org.cga.sctp.api.audit;
 
 import com.google.gson.Gson;
+import org.cga.sctp.api.config.AuditConfiguration;
 import org.cga.sctp.api.core.BaseService;
+import org.cga.sctp.api.core.pagination.CursorPage;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.event.EventListener;
-import org.springframework.scheduling.annotation.Async;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Service;
 
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
 
 @Service
 public class AuditService extends BaseService {
 
     @Autowired
-    private AuditEventLogRepository repository;
+    private AuditLogWriter writer;
+
+    @Autowired
+    private AuditAggregator aggregator;
 
     @Autowired
     private Gson gson;
 
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final Semaphore exportSlots;
+
+    @Autowired
+    public AuditService(AuditConfiguration auditConfiguration) {
+        this.exportSlots = new Semaphore(Math.max(1, auditConfiguration.getExport().getMaxConcurrent()));
+    }
+
+    private static final RowMapper<AuditEventLog> ROW_MAPPER = (rs, rowNum) -> {
+        final AuditEventLog log = new AuditEventLog();
+        log.setId(rs.getLong("id"));
+        log.setArchived(rs.getBoolean("archived"));
+        log.setEventType(EventType.values()[rs.getInt("event_type")]);
+        log.setCreatedAt(rs.getTimestamp("created_at").toLocalDateTime());
+        log.setLogData(rs.getString("log_data"));
+        return log;
+    };
+
     /**
-     * This method handles all audit events
+     * This method handles all audit events. Events are only queued here; see {@link AuditLogWriter}. Routine
+     * successes may be collapsed instead; see {@link AuditAggregator}.
      *
      * @param event Event to log
      */
-    @Async
     @EventListener
     void onEvent(AuditEvent event) {
+        if (aggregator.offer(event)) {
+            return;
+        }
         AuditEventLog log = new AuditEventLog();
         log.setArchived(false);
         log.setLogData(event.getLogData(gson));
         log.setCreatedAt(LocalDateTime.now());
         log.setEventType(event.getEventType());
-        repository.save(log);
+        writer.enqueue(log);
+    }
+
+    /**
+     * Search the audit log, newest events first. Every filter maps to an indexed column, including the user, IP
+     * address and reason, which are generated from {@code log_data}.
+     *
+     * @param criteria Search filters and position
+     * @return A page of events, with the cursor of the next page if there are more
+     */
+    public CursorPage<AuditEventLog> search(AuditSearchCriteria criteria) {
+        final StringBuilder sql = new StringBuilder("SELECT id, archived, event_type, created_at, log_data FROM event_logs");
+        final List<Object> args = new ArrayList<>();
+
+        appendConditions(criteria, sql, args);
+        // One extra row tells whether there is a next page
+        sql.append(" ORDER BY created_at DESC, id DESC LIMIT ?");
+        args.add(criteria.getLimit() + 1);
+
+        final List<AuditEventLog> logs = jdbcTemplate.query(sql.toString(), ROW_MAPPER, args.toArray());
+        if (logs.size() <= criteria.getLimit()) {
+            return new CursorPage<>(logs, null);
+        }
+        logs.remove(logs.size() - 1);
+        return new CursorPage<>(logs, AuditSearchCriteria.cursorOf(logs.get(logs.size() - 1)));
+    }
+
+    private static void appendConditions(AuditSearchCriteria criteria, StringBuilder sql, List<Object> args) {
+        final List<String> conditions = new ArrayList<>();
+
+        if (criteria.getEventType() != null) {
+            conditions.add("event_type = ?");
+            args.add(criteria.getEventType().ordinal());
+        }
+        if (criteria.getFrom() != null) {
+            conditions.add("created_at >= ?");
+            args.add(Timestamp.valueOf(criteria.getFrom()));
+        }
+        if (criteria.getTo() != null) {
+            conditions.add("created_at < ?");
+            args.add(Timestamp.valueOf(criteria.getTo()));
+        }
+        if (criteria.getUser() != null) {
+            conditions.add("log_user = ?");
+            args.add(criteria.getUser());
+        }
+        if (criteria.getIp() != null) {
+            conditions.add("log_ip = ?");
+            args.add(criteria.getIp());
+        }
+        if (criteria.getReason() != null) {
+            conditions.add("log_reason = ?");
+            args.add(criteria.getReason());
+        }
+        if (criteria.getAfterCreatedAt() != null) {
+            conditions.add("(created_at, id) < (?, ?)");
+            args.add(Timestamp.valueOf(criteria.getAfterCreatedAt()));
+            args.add(criteria.getAfterId());
+        }
+
+        if (!conditions.isEmpty()) {
+            sql.append(" WHERE ").append(String.join(" AND ", conditions));
+        }
+    }
+
+    /**
+     * Reserve one of the {@code audit.export.max_concurrent} export slots. Must be followed by {@link #endExport()},
+     * in a finally block.
+     *
+     * @return false if all slots are taken
+     */
+    public boolean tryBeginExport() {
+        return exportSlots.tryAcquire();
+    }
+
+    /**
+     * Free the export slot reserved by {@link #tryBeginExport()}.
+     */
+    public void endExport() {
+        exportSlots.release();
+    }
+
+    /**
+     * Write all events matching the criteria, oldest first, to the given stream. Rows are streamed from the database
+     * and written as they are read, so memory use does not depend on the number of rows. The export stops when
+     * writing fails (the client went away) or the thread is interrupted, and the query is cancelled rather than read
+     * to the end.
+     *
+     * @param criteria Search filters. The limit is ignored
+     * @param format   Output format
+     * @param output   Output stream. Not closed
+     * @return Number of rows written
+     * @throws IOException If writing fails or the export is interrupted
+     */
+    public long export(AuditSearchCriteria criteria, AuditExportFormat format, OutputStream output) throws IOException {
+        final StringBuilder sql = new StringBuilder(
+                "SELECT id, archived, event_type, created_at, log_data, log_user, log_ip, log_reason FROM event_logs");
+        final List<Object> args = new ArrayList<>();
+
+        appendConditions(criteria, sql, args);
+        sql.append(" ORDER BY created_at, id");
+
+        try {
+            return jdbcTemplate.execute((ConnectionCallback<Long>) connection -> {
+                try (PreparedStatement statement = connection.prepareStatement(sql.toString(),
+                        ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                    // Makes MySQL stream the rows instead of loading them all into memory
+                    statement.setFetchSize(Integer.MIN_VALUE);
+                    for (int i = 0; i < args.size(); i++) {
+                        statement.setObject(i + 1, args.get(i));
+                    }
+                    return export(statement, format, output);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private void cancel(PreparedStatement statement, long count, Exception cause) throws SQLException {
+        LOG.info("Audit export stopped after {} rows: {}", count, cause.toString());
+        // Otherwise closing the result set reads the remaining rows
+        statement.cancel();
+    }
+
+    private long export(PreparedStatement statement, AuditExportFormat format, OutputStream output) throws SQLException {
+        final Writer out = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8), 64 * 1024);
+        final ResultSet rs = statement.executeQuery();
+        long count = 0;
+
+        try {
+            format.writeHeader(out);
+            while (rs.next()) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedIOException("Audit export interrupted.");
+                }
+                format.writeRow(rs, out);
+                count++;
+            }
+            out.flush();
+            return count;
+        } catch (IOException e) {
+            cancel(statement, count, e);
+            throw new UncheckedIOException(e);
+        } catch (SQLException | RuntimeException e) {
+            cancel(statement, count, e);
+            throw e;
+        } finally {
+            rs.close();
+        }
     }
 }
@@ -0,0 +1,468 @@
+/*
+ * Copyright (C) 2021 CGA Technologies, a trading name of Charlie Goldsmith Associates Ltd
+ *  All rights reserved, released under the BSD-3 licence.
+ *
+ * CGA Technologies develop and use this software as part of its work
+ *  but the software itself is open-source software; you can redistribute it and/or modify
+ *  it under the terms of the BSD licence below
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice, this
+ *     list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *  3. Neither the name of the copyright holder nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *  THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *  PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS
+ *  BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ *  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ *  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ *  LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ *  OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ *  DAMAGE.
+ *
+ * For more information please see http://opensource.org/licenses/BSD-3-Clause
+ */
+
+package org.cga.sctp.api.audit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.cga.sctp.api.config.AuditConfiguration;
+import org.cga.sctp.api.core.BaseComponent;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
+/**
+ * <p>Crash-safe local copy of audit events that have not been written to {@code event_logs} yet.</p>
+ * <p>Events are appended to memory-mapped segment files before they are queued in {@link AuditLogWriter}, so an event
+ * survives a failed insert, a full queue or the process dying. Each record is framed as</p>
+ * <pre>
+ * int length | int crc32 | byte status | int event type | long seconds | int nanos | UTF-8 log data
+ * </pre>
+ * <p>where length and the checksum cover everything after the status byte. The status is updated in place when the
+ * event is written ({@link #acknowledge(Record)}) or has to be written later ({@link #defer(Record)}). Deferred events,
+ * and every unwritten event found on startup, are replayed by the writer. A segment is deleted once it is full and
+ * all of its events are written.</p>
+ * <p>Appends are sequential writes to the page cache and survive a process crash immediately; {@link #force()} makes
+ * them survive an operating system crash as well.</p>
+ */
+@Component
+public class AuditSpool extends BaseComponent {
+
+    private static final String SEGMENT_PREFIX = "audit-";
+    private static final String SEGMENT_SUFFIX = ".spool";
+
+    private static final int HEADER_SIZE = 4 + 4 + 1;
+    private static final int FIXED_PAYLOAD_SIZE = 4 + 8 + 4;
+
+    private static final byte STATUS_QUEUED = 0;
+    private static final byte STATUS_WRITTEN = 1;
+    private static final byte STATUS_DEFERRED = 2;
+
+    private final boolean enabled;
+    private final Path directory;
+    private final int segmentSize;
+
+    /**
+     * Segments in append order. The last one is the active segment.
+     */
+    private final ConcurrentLinkedDeque<Segment> segments = new ConcurrentLinkedDeque<>();
+    private Segment active;
+    private long nextSequence;
+
+    /**
+     * Number of events waiting for {@link #replay(int)}.
+     */
+    private final AtomicInteger deferred = new AtomicInteger();
+
+    private final Counter deferredCounter;
+    private final Counter replayedCounter;
+    private final Counter corruptCounter;
+
+    @Autowired
+    public AuditSpool(AuditConfiguration auditConfiguration, MeterRegistry registry) throws IOException {
+        final AuditConfiguration.SpoolConfig config = auditConfiguration.getSpool();
+
+        this.enabled = config.isEnabled();
+        this.directory = Paths.get(config.getDirectory());
+        this.segmentSize = config.getSegmentSize();
+        this.deferredCounter = Counter.builder("audit.spool.deferred").register(registry);
+        this.replayedCounter = Counter.builder("audit.spool.replayed").register(registry);
+        this.corruptCounter = Counter.builder("audit.spool.corrupt").register(registry);
+        Gauge.builder("audit.spool.pending", deferred, AtomicInteger::get).register(registry);
+        Gauge.builder("audit.spool.segments", segments, ConcurrentLinkedDeque::size).register(registry);
+
+        if (enabled) {
+            Files.createDirectories(directory);
+            recover();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Load segments left by a previous run. Every event in them that is not marked as written is deferred.
+     */
+    private void recover() throws IOException {
+        final List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            stream.forEach(files::add);
+        }
+        files.sort(null);
+
+        for (Path file : files) {
+            final Segment segment = Segment.open(file, sequenceOf(file), (int) Files.size(file));
+            final int pending = segment.recover();
+            nextSequence = Math.max(nextSequence, segment.sequence + 1);
+            if (segment.damaged) {
+                corruptCounter.increment();
+                LOG.warn("Audit spool segment {} is damaged after {} records. The rest of it is discarded.",
+                        file, segment.records);
+            }
+            if (pending == 0) {
+                Files.deleteIfExists(file);
+                continue;
+            }
+            segments.add(segment);
+            deferred.addAndGet(pending);
+        }
+
+        if (deferred.get() > 0) {
+            LOG.info("Found {} audit events in the spool that were not written. They will be replayed.", deferred.get());
+        }
+    }
+
+    private static long sequenceOf(Path file) {
+        final String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    /**
+     * Append an event to the spool.
+     *
+     * @param log Event log
+     * @return The record. It is not spooled if the spool is disabled or cannot take the event
+     */
+    public Record append(AuditEventLog log) {
+        if (!enabled) {
+            return new Record(null, -1, log);
+        }
+
+        final byte[] data = log.getLogData() == null ? new byte[0] : log.getLogData().getBytes(StandardCharsets.UTF_8);
+        final int frameSize = HEADER_SIZE + FIXED_PAYLOAD_SIZE + data.length;
+        if (frameSize + 4 > segmentSize) {
+            LOG.warn("Audit event of {} bytes exceeds the spool segment size. Not spooled.", data.length);
+            return new Record(null, -1, log);
+        }
+
+        try {
+            synchronized (this) {
+                if (active == null || !active.fits(frameSize)) {
+                    roll();
+                }
+                return active.append(log, data, frameSize);
+            }
+        } catch (IOException e) {
+            LOG.error("Cannot write to the audit spool in {}.", directory, e);
+            return new Record(null, -1, log);
+        }
+    }
+
+    private void roll() throws IOException {
+        final Segment previous = active;
+        active = Segment.create(directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, nextSequence, SEGMENT_SUFFIX)),
+                nextSequence, segmentSize);
+        nextSequence++;
+        segments.add(active);
+        if (previous != null) {
+            previous.force();
+            previous.seal();
+            deleteIfDone(previous);
+        }
+    }
+
+    /**
+     * Mark a record as written to the database.
+     */
+    public void acknowledge(Record record) {
+        if (!record.isSpooled()) {
+            return;
+        }
+        final byte status = record.segment.status(record.offset);
+        if (status == STATUS_WRITTEN) {
+            return;
+        }
+        record.segment.setStatus(record.offset, STATUS_WRITTEN);
+        if (status == STATUS_DEFERRED) {
+            deferred.decrementAndGet();
+        }
+        record.segment.written.incrementAndGet();
+        deleteIfDone(record.segment);
+    }
+
+    /**
+     * Mark a queued record as not written, to be picked up by {@link #replay(int)}. Records that are not spooled
+     * are lost.
+     */
+    public void defer(Record record) {
+        if (!record.isSpooled() || record.segment.status(record.offset) != STATUS_QUEUED) {
+            return;
+        }
+        record.segment.setStatus(record.offset, STATUS_DEFERRED);
+        deferred.incrementAndGet();
+        deferredCounter.increment();
+    }
+
+    public boolean hasDeferred() {
+        return deferred.get() > 0;
+    }
+
+    /**
+     * Read deferred records, oldest first.
+     *
+     * @param limit Maximum number of records
+     * @return Deferred records. They remain deferred until acknowledged
+     */
+    public List<Record> replay(int limit) {
+        final List<Record> records = new ArrayList<>(Math.min(limit, deferred.get()));
+        for (Segment segment : segments) {
+            segment.collectDeferred(records, limit);
+            if (records.size() >= limit) {
+                break;
+            }
+        }
+        replayedCounter.increment(records.size());
+        return records;
+    }
+
+    /**
+     * Flush the active segment to disk.
+     */
+    public void force() {
+        final Segment segment = active;
+        if (segment != null) {
+            segment.force();
+        }
+    }
+
+    private void deleteIfDone(Segment segment) {
+        if (segment.isDone() && segments.remove(segment)) {
+            try {
+                Files.deleteIfExists(segment.file);
+                LOG.debug("Deleted audit spool segment {}.", segment.file);
+            } catch (IOException e) {
+                LOG.warn("Cannot delete audit spool segment {}.", segment.file, e);
+            }
+        }
+    }
+
+    @PreDestroy
+    synchronized void close() {
+        segments.forEach(Segment::force);
+    }
+
+    /**
+     * A spooled event.
+     */
+    public static final class Record {
+        private final Segment segment;
+        private final int offset;
+        private final AuditEventLog log;
+
+        private Record(Segment segment, int offset, AuditEventLog log) {
+            this.segment = segment;
+            this.offset = offset;
+            this.log = log;
+        }
+
+        public AuditEventLog getLog() {
+            return log;
+        }
+
+        public boolean isSpooled() {
+            return segment != null;
+        }
+    }
+
+    private static final class Segment {
+        private final Path file;
+        private final long sequence;
+        private final MappedByteBuffer buffer;
+
+        /**
+         * End of the last complete record. Records below it are visible to other threads.
+         */
+        private volatile int limit;
+        private volatile boolean sealed;
+        private int records;
+        private final AtomicInteger written = new AtomicInteger();
+        private boolean damaged;
+
+        private Segment(Path file, long sequence, MappedByteBuffer buffer) {
+            this.file = file;
+            this.sequence = sequence;
+            this.buffer = buffer;
+        }
+
+        static Segment create(Path file, long sequence, int size) throws IOException {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE)) {
+                return new Segment(file, sequence, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+            }
+        }
+
+        static Segment open(Path file, long sequence, int size) throws IOException {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                return new Segment(file, sequence, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+            }
+        }
+
+        /**
+         * Validate the records of a segment from a previous run and defer those that were not written. Reading
+         * stops at the first incomplete or damaged record.
+         *
+         * @return Number of records not written
+         */
+        int recover() {
+            final CRC32 crc = new CRC32();
+            int offset = 0;
+            int pending = 0;
+
+            while (offset + HEADER_SIZE <= buffer.capacity()) {
+                final int length = buffer.getInt(offset);
+                if (length == 0) {
+                    break;
+                }
+                if (length < FIXED_PAYLOAD_SIZE || offset + HEADER_SIZE + length > buffer.capacity()
+                        || checksum(crc, offset + HEADER_SIZE, length) != buffer.getInt(offset + 4)) {
+                    damaged = true;
+                    break;
+                }
+                records++;
+                if (status(offset) == STATUS_WRITTEN) {
+                    written.incrementAndGet();
+                } else {
+                    setStatus(offset, STATUS_DEFERRED);
+                    pending++;
+                }
+                offset += HEADER_SIZE + length;
+            }
+
+            limit = offset;
+            sealed = true;
+            return pending;
+        }
+
+        boolean fits(int frameSize) {
+            // Leave room for the zero length that marks the end
+            return limit + frameSize + 4 <= buffer.capacity();
+        }
+
+        Record append(AuditEventLog log, byte[] data, int frameSize) {
+            final int offset = limit;
+            final int payload = offset + HEADER_SIZE;
+            final LocalDateTime createdAt = log.getCreatedAt();
+            final ByteBuffer frame = buffer.duplicate();
+
+            frame.position(payload);
+            frame.putInt(log.getEventType().ordinal());
+            frame.putLong(createdAt.toEpochSecond(ZoneOffset.UTC));
+            frame.putInt(createdAt.getNano());
+            frame.put(data);
+
+            // The length goes last, so a torn write leaves either nothing or a record failing its checksum
+            buffer.put(offset + 8, STATUS_QUEUED);
+            buffer.putInt(offset + 4, checksum(new CRC32(), payload, frameSize - HEADER_SIZE));
+            buffer.putInt(offset, frameSize - HEADER_SIZE);
+
+            records++;
+            limit = offset + frameSize;
+            return new Record(this, offset, log);
+        }
+
+        private int checksum(CRC32 crc, int from, int length) {
+            final ByteBuffer slice = buffer.duplicate();
+            slice.position(from).limit(from + length);
+            crc.reset();
+            crc.update(slice);
+            return (int) crc.getValue();
+        }
+
+        byte status(int offset) {
+            return buffer.get(offset + 8);
+        }
+
+        void setStatus(int offset, byte status) {
+            buffer.put(offset + 8, status);
+        }
+
+        void collectDeferred(List<Record> records, int max) {
+            final int end = limit;
+            int offset = 0;
+            while (offset < end && records.size() < max) {
+                final int length = buffer.getInt(offset);
+                if (status(offset) == STATUS_DEFERRED) {
+                    records.add(new Record(this, offset, read(offset + HEADER_SIZE, length)));
+                }
+                offset += HEADER_SIZE + length;
+            }
+        }
+
+        private AuditEventLog read(int from, int length) {
+            final ByteBuffer frame = buffer.duplicate();
+            final AuditEventLog log = new AuditEventLog();
+            final byte[] data = new byte[length - FIXED_PAYLOAD_SIZE];
+
+            frame.position(from);
+            log.setEventType(EventType.values()[frame.getInt()]);
+            log.setCreatedAt(LocalDateTime.ofEpochSecond(frame.getLong(), frame.getInt(), ZoneOffset.UTC));
+            frame.get(data);
+            log.setLogData(data.length == 0 ? null : new String(data, StandardCharsets.UTF_8));
+            return log;
+        }
+
+        void seal() {
+            sealed = true;
+        }
+
+        boolean isDone() {
+            return sealed && written.get() >= records;
+        }
+
+        void force() {
+            buffer.force();
+        }
+    }
+}
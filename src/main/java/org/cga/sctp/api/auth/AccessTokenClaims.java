@@ -37,7 +37,13 @@ package org.cga.sctp.api.auth;
 
 import org.cga.sctp.api.user.ApiUser;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 public class AccessTokenClaims {
+    private static final String FIRST_NAME = "fn";
+    private static final String LAST_NAME = "ln";
+
     private String lastName;
     private String userName;
     private String firstName;
@@ -74,4 +80,25 @@ public class AccessTokenClaims {
     public void setUserName(String userName) {
         this.userName = userName;
     }
+
+    /**
+     * Get the claims as a map to be embedded as a native JWT claim. The user name is carried by the token
+     * subject, so it is not part of the map.
+     *
+     * @return .
+     */
+    public Map<String, Object> toMap() {
+        final Map<String, Object> map = new LinkedHashMap<>();
+        map.put(FIRST_NAME, firstName);
+        map.put(LAST_NAME, lastName);
+        return map;
+    }
+
+    public static AccessTokenClaims fromMap(String userName, Map<String, Object> map) {
+        final AccessTokenClaims claims = new AccessTokenClaims();
+        claims.setUserName(userName);
+        claims.setFirstName((String) map.get(FIRST_NAME));
+        claims.setLastName((String) map.get(LAST_NAME));
+        return claims;
+    }
 }
@@ -40,13 +40,20 @@ import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import org.cga.sctp.api.core.AppConstants;
 import org.cga.sctp.api.core.BaseController;
 import org.cga.sctp.api.core.IncludeGeneralResponses;
 import org.cga.sctp.api.security.JwtInfo;
 import org.cga.sctp.api.security.JwtUtil;
+import org.cga.sctp.api.security.LoginThrottle;
+import org.cga.sctp.api.security.PrincipalCache;
+import org.cga.sctp.api.security.apikey.ApiKeyRegistry;
+import org.cga.sctp.api.security.session.UserSessionRegistry;
 import org.cga.sctp.api.user.ApiUser;
 import org.cga.sctp.api.user.ApiUserService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
@@ -57,6 +64,8 @@ import org.springframework.web.bind.annotation.RestController;
 import javax.servlet.http.HttpServletRequest;
 import javax.validation.Valid;
 import java.time.LocalDateTime;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 @RestController
 @RequestMapping
@@ -72,19 +81,46 @@ public class AuthController extends BaseController {
     @Autowired
     private JwtUtil jwtUtil;
 
+    @Autowired
+    private PrincipalCache principalCache;
+
+    @Autowired
+    private UserSessionRegistry sessionRegistry;
+
+    @Autowired
+    private LoginThrottle loginThrottle;
+
+    @Autowired
+    private RefreshTokenService refreshTokenService;
+
+    @Autowired
+    private ApiKeyRegistry apiKeyRegistry;
+
+    @Autowired
+    @Qualifier("applicationTaskExecutor")
+    private Executor taskExecutor;
+
     @PostMapping("/authenticate")
     @Operation(description = "Authenticates the user using username and password.")
     @ApiResponses({
             @ApiResponse(responseCode = "401", description = "Authentication failed. Invalid username or password.", content = @Content),
-            @ApiResponse(responseCode = "403", description = "Authentication failed. Inactive account.", content = @Content)
+            @ApiResponse(responseCode = "403", description = "Authentication failed. Inactive account.", content = @Content),
+            @ApiResponse(responseCode = "429", description = "Too many authentication attempts for the user or from the client address.", content = @Content),
+            @ApiResponse(responseCode = "503", description = "Too many concurrent authentication requests. Retry after the time given in the Retry-After header.", content = @Content)
     })
     @IncludeGeneralResponses
-    public ResponseEntity<AuthenticationResponse> authenticateApiUser(@Valid @RequestBody AuthenticationRequest request, HttpServletRequest httpRequest) {
+    public CompletableFuture<ResponseEntity<AuthenticationResponse>> authenticateApiUser(@Valid @RequestBody AuthenticationRequest request, HttpServletRequest httpRequest) {
         final ApiUser apiUser;
-        final JwtInfo jwtInfo;
+        final String userAgent = httpRequest.getHeader(HttpHeaders.USER_AGENT);
+
+        if (!loginThrottle.tryAcquire(request.getUserName(), httpRequest.getRemoteAddr())) {
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(loginThrottle.getRetryAfter()))
+                    .build());
+        }
 
         if ((apiUser = apiUserService.findByUserName(request.getUserName())) == null) {
-            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.UNAUTHORIZED).build());
         }
 
         apiUser.setLastAuthAttemptAt(LocalDateTime.now());
@@ -93,38 +129,120 @@ public class AuthController extends BaseController {
         if (authService.isSystemAdministratorRole(apiUser.getRole())) {
             if (!authService.canSystemAdminUseAPI()) {
                 publishEvent(AuthenticationEvent.ofFailure(apiUser, "Administrator disabled."));
-                return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+                return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.UNAUTHORIZED).build());
             }
         }
 
         if (apiUser.isDeleted() || !apiUser.isActive() || !apiUser.getRole().isActive()) {
             publishEvent(AuthenticationEvent.ofFailure(apiUser, "Inactive principal"));
-            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.FORBIDDEN).build());
         }
 
-        if (!authService.authenticateUser(apiUser, request.getPassword())) {
-            apiUser.setAuthAttempts(apiUser.getAuthAttempts() + 1);
-            apiUser.setActive(apiUser.getAuthAttempts() >= authService.getMaxAuthAttempts());
+        // The request thread is released while the password is verified. The rest of the login runs on the
+        // application task executor rather than on the hashing pool
+        return authService.authenticateUser(apiUser, request.getPassword())
+                .thenApplyAsync(matched -> matched
+                        ? completeAuthentication(apiUser, request.getPassword(), userAgent)
+                        : failAuthentication(apiUser), taskExecutor);
+    }
 
-            if (!apiUser.isActive()) {
-                publishEvent(AuthenticationEvent.ofFailure(apiUser, "Max allowed authentication attempts exhausted."));
-                apiUser.setStatusText(format("Locked after %,d failed authentication attempts.",
-                        authService.getMaxAuthAttempts()));
-            }
+    private ResponseEntity<AuthenticationResponse> failAuthentication(ApiUser apiUser) {
+        apiUser.setAuthAttempts(apiUser.getAuthAttempts() + 1);
+        apiUser.setActive(apiUser.getAuthAttempts() < authService.getMaxAuthAttempts());
+
+        if (!apiUser.isActive()) {
+            publishEvent(AuthenticationEvent.ofFailure(apiUser, "Max allowed authentication attempts exhausted."));
+            apiUser.setStatusText(format("Locked after %,d failed authentication attempts.",
+                    authService.getMaxAuthAttempts()));
+        }
+
+        apiUserService.saveAuthenticationState(apiUser);
+        apiUserService.recordAuthenticationAttempt(apiUser);
+
+        if (!apiUser.isActive()) {
+            sessionRegistry.revokeByUser(apiUser.getUserName());
+            refreshTokenService.revokeAll(apiUser.getUserName());
+            principalCache.evictUser(apiUser.getUserName());
+            apiKeyRegistry.evictUser(apiUser.getUserName());
+        }
 
-            apiUserService.saveUser(apiUser);
-            publishEvent(AuthenticationEvent.ofSuccess(apiUser));
-            return ResponseEntity.status(!apiUser.isActive() ? HttpStatus.FORBIDDEN : HttpStatus.UNAUTHORIZED).build();
+        if (apiUser.isActive()) {
+            publishEvent(AuthenticationEvent.ofFailure(apiUser, "Invalid password."));
+        }
+        return ResponseEntity.status(!apiUser.isActive() ? HttpStatus.FORBIDDEN : HttpStatus.UNAUTHORIZED).build();
+    }
+
+    private ResponseEntity<AuthenticationResponse> completeAuthentication(ApiUser apiUser, String password, String userAgent) {
+        final JwtInfo jwtInfo;
+        final String refreshToken;
+
+        if (authService.needsRehash(apiUser)) {
+            authService.rehashPassword(apiUser, apiUser.getPassword(), password);
         }
 
         // Generate token
         jwtInfo = jwtUtil.generateJwt(apiUser);
+        refreshToken = refreshTokenService.issue(apiUser.getUserName());
 
         apiUser.setAuthAttempts(0);
-        apiUser.setSessionId(jwtInfo.getJti());
 
-        apiUserService.saveUser(apiUser);
+        apiUserService.saveAuthenticationState(apiUser);
+        apiUserService.recordAuthenticationAttempt(apiUser);
+
+        // Sessions on other devices stay signed in
+        sessionRegistry.create(apiUser.getUserName(), jwtInfo.getJti(), jwtInfo.getExpiresAt(),
+                userAgent, RefreshTokenService.selectorOf(refreshToken));
+
+        publishEvent(AuthenticationEvent.ofSuccess(apiUser));
+        return ResponseEntity.ok(new AuthenticationResponse(jwtInfo.getToken(), refreshToken));
+    }
+
+    @PostMapping(AppConstants.REFRESH_PATH)
+    @Operation(description = "Issues a new access token in exchange for a refresh token. Refresh tokens can only be used once; the response carries the next one.")
+    @ApiResponses({
+            @ApiResponse(responseCode = "401", description = "Invalid, expired or already used refresh token.", content = @Content),
+            @ApiResponse(responseCode = "403", description = "Inactive account.", content = @Content)
+    })
+    @IncludeGeneralResponses
+    public ResponseEntity<AuthenticationResponse> refreshAccessToken(@Valid @RequestBody RefreshTokenRequest request, HttpServletRequest httpRequest) {
+        final ApiUser apiUser;
+        final JwtInfo jwtInfo;
+        final String refreshToken;
+        final RefreshTokenService.Redemption redemption;
+
+        redemption = refreshTokenService.redeem(request.getRefreshToken());
+        switch (redemption.getStatus()) {
+            case VALID:
+                break;
+            case REUSED:
+                // Possibly a stolen token. All refresh tokens were revoked; end all sessions as well
+                sessionRegistry.revokeByUser(redemption.getToken().getUserName());
+                principalCache.evictUser(redemption.getToken().getUserName());
+                return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+            default:
+                return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+
+        if ((apiUser = apiUserService.findByUserName(redemption.getToken().getUserName())) == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+
+        if (authService.isSystemAdministratorRole(apiUser.getRole()) && !authService.canSystemAdminUseAPI()) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+
+        if (apiUser.isDeleted() || !apiUser.isActive() || !apiUser.getRole().isActive()) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+
+        jwtInfo = jwtUtil.generateJwt(apiUser);
+        refreshToken = refreshTokenService.rotate(redemption.getToken());
+
+        // The new session replaces the one the refresh token was issued with
+        sessionRegistry.revokeByRefreshSelector(redemption.getToken().getSelector());
+        sessionRegistry.create(apiUser.getUserName(), jwtInfo.getJti(), jwtInfo.getExpiresAt(),
+                httpRequest.getHeader(HttpHeaders.USER_AGENT), RefreshTokenService.selectorOf(refreshToken));
 
-        return ResponseEntity.ok(new AuthenticationResponse(jwtInfo.getToken()));
+        return ResponseEntity.ok(new AuthenticationResponse(jwtInfo.getToken(), refreshToken));
     }
-}
\ No newline at end of file
+}
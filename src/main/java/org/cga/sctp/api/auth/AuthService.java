@@ -38,13 +38,18 @@ package org.cga.sctp.api.auth;
 import org.cga.sctp.api.config.AuthConfiguration;
 import org.cga.sctp.api.core.AppConstants;
 import org.cga.sctp.api.core.BaseService;
+import org.cga.sctp.api.security.PasswordHashingExecutor;
+import org.cga.sctp.api.security.PasswordHashingUnavailableException;
 import org.cga.sctp.api.security.access_control.UserRole;
 import org.cga.sctp.api.user.ApiUser;
+import org.cga.sctp.api.user.ApiUserService;
 import org.cga.sctp.api.utils.CryptoUtils;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
+import java.util.concurrent.CompletableFuture;
+
 @Service
 public class AuthService extends BaseService {
 
@@ -52,10 +57,51 @@ public class AuthService extends BaseService {
     private AuthConfiguration configuration;
 
     @Autowired
-    private PasswordEncoder passwordEncoder;
+    private PasswordHashingExecutor passwordHashingExecutor;
+
+    @Autowired
+    private ApiUserService apiUserService;
+
+    /**
+     * Verify the user's password on the password hashing pool without waiting for the result.
+     *
+     * @return Completes with the outcome on a hashing thread
+     * @throws PasswordHashingUnavailableException when the pool is saturated
+     * @see PasswordHashingExecutor#matchesAsync(String, String)
+     */
+    public CompletableFuture<Boolean> authenticateUser(ApiUser apiUser, String password) {
+        return passwordHashingExecutor.matchesAsync(password, apiUser.getPassword());
+    }
+
+    /**
+     * @return true if the user's stored hash has another cost or format than newly encoded passwords
+     */
+    public boolean needsRehash(ApiUser apiUser) {
+        return passwordHashingExecutor.upgradeEncoding(apiUser.getPassword());
+    }
 
-    public boolean authenticateUser(ApiUser apiUser, String password) {
-        return passwordEncoder.matches(password, apiUser.getPassword());
+    /**
+     * Replace the user's stored hash after a successful login. Runs in the background; when the hashing pool is
+     * saturated the rehash is skipped and retried on a later login.
+     *
+     * The new hash is only stored if the old one is still in place, so a password changed meanwhile is not
+     * overwritten with a hash of the previous one.
+     *
+     * @param apiUser      User
+     * @param verifiedHash Stored hash the password was just verified against
+     * @param password     Password the user just authenticated with
+     */
+    @Async
+    public void rehashPassword(ApiUser apiUser, String verifiedHash, String password) {
+        try {
+            if (apiUserService.replacePassword(apiUser, verifiedHash, passwordHashingExecutor.encode(password))) {
+                LOG.debug("Rehashed password of {}.", apiUser.getUserName());
+            } else {
+                LOG.debug("Skipped rehashing password of {}: the password has changed.", apiUser.getUserName());
+            }
+        } catch (PasswordHashingUnavailableException e) {
+            LOG.debug("Skipped rehashing password of {}: {}", apiUser.getUserName(), e.getMessage());
+        }
     }
 
     public String generateRandomString(int count) {
@@ -63,7 +109,7 @@ public class AuthService extends BaseService {
     }
 
     public String generatePassword() {
-        return passwordEncoder.encode(generateRandomString(15));
+        return passwordHashingExecutor.encode(generateRandomString(15));
     }
 
     public int getMaxAuthAttempts() {
@@ -36,16 +36,19 @@
 package org.cga.sctp.api.auth;
 
 import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
 import org.cga.sctp.api.audit.AuditEvent;
 import org.cga.sctp.api.audit.EventType;
+import org.cga.sctp.api.security.access_control.UserRole;
 import org.cga.sctp.api.user.ApiUser;
 import org.cga.sctp.api.utils.DateUtils;
 
-import java.time.LocalDateTime;
-import java.util.LinkedHashMap;
-import java.util.Map;
+import java.io.IOException;
 
 public class AuthenticationEvent extends AuditEvent {
+    private static final String SUCCESS_REASON = "Successful login";
+
+    private final boolean success;
     private final String reason;
 
     /**
@@ -54,29 +57,64 @@ public class AuthenticationEvent extends AuditEvent {
      * @param source the object on which the event initially occurred or with
      *               which the event is associated (never {@code null})
      */
-    private AuthenticationEvent(ApiUser source, String reason) {
+    private AuthenticationEvent(ApiUser source, boolean success, String reason) {
         super(EventType.security, source);
+        this.success = success;
         this.reason = reason;
     }
 
     public static AuthenticationEvent ofSuccess(ApiUser user) {
-        return new AuthenticationEvent(user, "Successful login");
+        return new AuthenticationEvent(user, true, SUCCESS_REASON);
     }
 
     public static AuthenticationEvent ofFailure(ApiUser user, String reason) {
-        return new AuthenticationEvent(user, reason);
+        return new AuthenticationEvent(user, false, reason);
+    }
+
+    @Override
+    public boolean isSuccess() {
+        return success;
     }
 
     @Override
-    public Map<String, Object> getLogData(Gson gson) {
+    public String getReason() {
+        return reason;
+    }
+
+    @Override
+    public String getPrincipal() {
+        return ((ApiUser) getSource()).getUserName();
+    }
+
+    @Override
+    public String getAddress() {
+        return ((ApiUser) getSource()).getIpAddress();
+    }
+
+    @Override
+    public void writeLogData(Gson gson, JsonWriter writer) throws IOException {
         final ApiUser user = (ApiUser) getSource();
-        final Map<String, Object> data = new LinkedHashMap<>();
-        data.put("user", user.getUserName());
-        data.put("role", user.getRole());
-        data.put("ip", user.getIpAddress());
-        data.put("status", user.getStatus());
-        data.put("timestamp", DateUtils.formatDateAsIsoString(user.getLastAuthAttemptAt()));
-        data.put("reason", reason);
-        return data;
+        writer.beginObject();
+        writer.name("user").value(user.getUserName());
+        writer.name("role");
+        writeRole(user.getRole(), writer);
+        writer.name("ip").value(user.getIpAddress());
+        writer.name("status").value(user.getStatus() == null ? null : user.getStatus().name());
+        writer.name("timestamp").value(DateUtils.formatDateAsIsoString(user.getLastAuthAttemptAt()));
+        writer.name("reason").value(reason);
+        writer.endObject();
+    }
+
+    private static void writeRole(UserRole role, JsonWriter writer) throws IOException {
+        if (role == null) {
+            writer.nullValue();
+            return;
+        }
+        writer.beginObject();
+        writer.name("id").value(role.getId());
+        writer.name("name").value(role.getName());
+        writer.name("active").value(role.isActive());
+        writer.name("description").value(role.getDescription());
+        writer.endObject();
     }
 }
@@ -37,12 +37,18 @@ package org.cga.sctp.api.auth;
 
 public class AuthenticationResponse {
     private final String accessToken;
+    private final String refreshToken;
 
-    public AuthenticationResponse(String accessToken) {
+    public AuthenticationResponse(String accessToken, String refreshToken) {
         this.accessToken = accessToken;
+        this.refreshToken = refreshToken;
     }
 
     public String getAccessToken() {
         return accessToken;
     }
+
+    public String getRefreshToken() {
+        return refreshToken;
+    }
 }
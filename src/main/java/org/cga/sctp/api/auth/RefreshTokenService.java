@@ -0,0 +1,220 @@
+/*
+ * Copyright (C) 2021 CGA Technologies, a trading name of Charlie Goldsmith Associates Ltd
+ *  All rights reserved, released under the BSD-3 licence.
+ *
+ * CGA Technologies develop and use this software as part of its work
+ *  but the software itself is open-source software; you can redistribute it and/or modify
+ *  it under the terms of the BSD licence below
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice, this
+ *     list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *  3. Neither the name of the copyright holder nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *  THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *  PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS
+ *  BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ *  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ *  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ *  LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ *  OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ *  DAMAGE.
+ *
+ * For more information please see http://opensource.org/licenses/BSD-3-Clause
+ */
+
+package org.cga.sctp.api.auth;
+
+import org.cga.sctp.api.config.AuthConfiguration;
+import org.cga.sctp.api.core.BaseService;
+import org.cga.sctp.api.utils.CryptoUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+
+@Service
+public class RefreshTokenService extends BaseService {
+
+    private static final int SELECTOR_LENGTH = 24;
+    private static final int VERIFIER_LENGTH = 43;
+
+    @Autowired
+    private RefreshTokenRepository repository;
+
+    @Autowired
+    private AuthConfiguration configuration;
+
+    /**
+     * Result of redeeming a refresh token.
+     */
+    public enum Status {
+        VALID,
+        INVALID,
+        EXPIRED,
+        /**
+         * The token was used before. Either the client misbehaved or the token was stolen.
+         */
+        REUSED
+    }
+
+    /**
+     * Issue a new refresh token for the user.
+     *
+     * @param userName User name
+     * @return The token to hand to the client
+     */
+    public String issue(String userName) {
+        return issue(userName, LocalDateTime.now().plusHours(configuration.getRefreshToken().getTtl()));
+    }
+
+    private String issue(String userName, LocalDateTime expiresAt) {
+        final String selector = CryptoUtils.genRandomString(SELECTOR_LENGTH);
+        final String verifier = CryptoUtils.genRandomString(VERIFIER_LENGTH);
+        final RefreshToken token = new RefreshToken();
+
+        token.setSelector(selector);
+        token.setUserName(userName);
+        token.setRevoked(false);
+        token.setExpiresAt(expiresAt);
+        token.setCreatedAt(LocalDateTime.now());
+        token.setTokenHash(toHex(sha256(verifier)));
+
+        repository.save(token);
+        return selector + verifier;
+    }
+
+    /**
+     * Look up and consume a refresh token. A token can only be redeemed once; presenting it again revokes every
+     * refresh token belonging to the user. Revoked tokens that were never redeemed are just invalid.
+     *
+     * @param value Token as given to the client
+     * @return The consumed token when the status is {@link Status#VALID}
+     */
+    public Redemption redeem(String value) {
+        final RefreshToken token;
+        final LocalDateTime now = LocalDateTime.now();
+
+        if (value == null || value.length() != SELECTOR_LENGTH + VERIFIER_LENGTH) {
+            return Redemption.of(Status.INVALID, null);
+        }
+
+        if ((token = repository.findBySelector(value.substring(0, SELECTOR_LENGTH))) == null) {
+            return Redemption.of(Status.INVALID, null);
+        }
+
+        // Constant time comparison of the verifier digests
+        if (!MessageDigest.isEqual(
+                toHex(sha256(value.substring(SELECTOR_LENGTH))).getBytes(StandardCharsets.US_ASCII),
+                token.getTokenHash().getBytes(StandardCharsets.US_ASCII))) {
+            return Redemption.of(Status.INVALID, null);
+        }
+
+        if (token.getExpiresAt().isBefore(now)) {
+            return Redemption.of(Status.EXPIRED, token);
+        }
+
+        // Revoked by a lockout, a password login or an earlier reuse. Not a reuse by itself; revoking again would
+        // end the sessions the user started since
+        if (token.isRevoked() && token.getUsedAt() == null) {
+            return Redemption.of(Status.INVALID, null);
+        }
+
+        if (token.getUsedAt() == null && repository.markUsed(token.getId(), now) == 1) {
+            return Redemption.of(Status.VALID, token);
+        }
+
+        // The token changed since it was read: either it was used by a concurrent redemption, or revoked like above
+        final RefreshToken current = token.getUsedAt() == null ? repository.findBySelector(token.getSelector()) : token;
+        if (current == null || (current.isRevoked() && current.getUsedAt() == null)) {
+            return Redemption.of(Status.INVALID, null);
+        }
+
+        LOG.warn("Refresh token reuse detected for {}. Revoking all refresh tokens.", token.getUserName());
+        revokeAll(token.getUserName());
+        return Redemption.of(Status.REUSED, token);
+    }
+
+    /**
+     * Issue the successor of a redeemed token. The successor keeps the expiry of the original token, so clients
+     * still have to sign in with their password at least once every {@code auth.refresh_token.ttl} hours.
+     *
+     * @param redeemed Token returned by {@link #redeem(String)}
+     * @return The new token to hand to the client
+     */
+    public String rotate(RefreshToken redeemed) {
+        return issue(redeemed.getUserName(), redeemed.getExpiresAt());
+    }
+
+    /**
+     * @param value Token as given to the client
+     * @return The token's selector, which identifies the token without revealing it
+     */
+    public static String selectorOf(String value) {
+        return value.substring(0, SELECTOR_LENGTH);
+    }
+
+    public void revokeAll(String userName) {
+        repository.revokeByUserName(userName);
+    }
+
+    @Scheduled(cron = "${auth.refresh_token.cleanup_cron}")
+    public void deleteExpired() {
+        final int count = repository.deleteExpired(LocalDateTime.now());
+        if (count > 0) {
+            LOG.debug("Removed {} expired refresh tokens.", count);
+        }
+    }
+
+    private static byte[] sha256(String value) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        final StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    public static final class Redemption {
+        private final Status status;
+        private final RefreshToken token;
+
+        private Redemption(Status status, RefreshToken token) {
+            this.status = status;
+            this.token = token;
+        }
+
+        static Redemption of(Status status, RefreshToken token) {
+            return new Redemption(status, token);
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        public RefreshToken getToken() {
+            return token;
+        }
+    }
+}
@@ -35,21 +35,22 @@
 
 package org.cga.sctp.api.config;
 
-import org.cga.sctp.api.core.AppConstants;
 import org.cga.sctp.api.security.JwtAuthorizationFilterFilter;
 import org.cga.sctp.api.security.JwtUtil;
+import org.cga.sctp.api.security.RouteClassifier;
+import org.cga.sctp.api.security.TunableBCryptPasswordEncoder;
 import org.cga.sctp.api.user.ApiUserService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpMethod;
-import org.springframework.security.config.annotation.method.configuration.EnableGlobalMethodSecurity;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.builders.WebSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
 import org.springframework.security.config.http.SessionCreationPolicy;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.DelegatingPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.CorsConfigurationSource;
@@ -57,6 +58,7 @@ import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
 
 import javax.servlet.http.HttpServletResponse;
 import java.util.List;
+import java.util.Map;
 
 
 
@@ -65,11 +67,6 @@ import java.util.List;
  */
 @Configuration
 @EnableWebSecurity
-@EnableGlobalMethodSecurity(
-        prePostEnabled = true, // Allows use of @PreAuthorize(...),
-        securedEnabled = true,
-        jsr250Enabled = true
-)
 public class ApiSecurityConfiguration extends WebSecurityConfigurerAdapter {
 
     @Autowired
@@ -81,21 +78,30 @@ public class ApiSecurityConfiguration extends WebSecurityConfigurerAdapter {
     @Autowired
     private JwtAuthorizationFilterFilter jwtFilter;
 
+    @Autowired
+    private RouteClassifier routeClassifier;
+
     @Override
     public void configure(WebSecurity web) throws Exception {
         web.ignoring()
-                .antMatchers("/v2/api-docs",
-                        "/configuration/ui",
-                        "/swagger-resources/**",
-                        "/configuration/security",
-                        "/swagger-ui.html",
-                        "/swagger-ui/**",
-                        "/webjars/**");
+                .requestMatchers(routeClassifier.matcher(RouteClassifier.RouteType.PUBLIC, null));
     }
 
+    /**
+     * Password hashes are stored with an {@code {id}} prefix. Unprefixed hashes (including {@code $2y$}) predate
+     * the prefix and are matched as bcrypt; they are rewritten with the prefix on the next successful login.
+     */
     @Bean
-    BCryptPasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder(12); // Rounds
+    PasswordEncoder passwordEncoder(AuthConfiguration authConfiguration) {
+        final AuthConfiguration.HashingConfig hashing = authConfiguration.getHashing();
+        final int cost = hashing.getCost() > 0
+                ? hashing.getCost()
+                : TunableBCryptPasswordEncoder.calibrate(hashing.getTargetLatency(), hashing.getMinCost(), hashing.getMaxCost());
+        final PasswordEncoder bcrypt = new TunableBCryptPasswordEncoder(cost);
+        final DelegatingPasswordEncoder encoder = new DelegatingPasswordEncoder("bcrypt", Map.of("bcrypt", bcrypt));
+
+        encoder.setDefaultPasswordEncoderForMatches(bcrypt);
+        return encoder;
     }
 
     @Override
@@ -107,8 +113,7 @@ public class ApiSecurityConfiguration extends WebSecurityConfigurerAdapter {
                 .sessionManagement().sessionCreationPolicy(SessionCreationPolicy.STATELESS) // Disable session cookies
                 .and()
                 .authorizeRequests()
-                .antMatchers(HttpMethod.POST, AppConstants.AUTHENTICATION_PATH).permitAll() // Authentication endpoint does not require authentication
-                .antMatchers("/api-doc", "/api-doc/**", "/api-doc.yaml", "/swagger-ui/**").permitAll()
+                .requestMatchers(routeClassifier.matcher(RouteClassifier.RouteType.AUTHENTICATION, HttpMethod.POST)).permitAll() // Authentication endpoints do not require authentication
                 .anyRequest().authenticated() // Any other request requires authentication
                 .and()
                 .exceptionHandling()
@@ -0,0 +1,436 @@
+/*
+ * Copyright (C) 2021 CGA Technologies, a trading name of Charlie Goldsmith Associates Ltd
+ *  All rights reserved, released under the BSD-3 licence.
+ *
+ * CGA Technologies develop and use this software as part of its work
+ *  but the software itself is open-source software; you can redistribute it and/or modify
+ *  it under the terms of the BSD licence below
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice, this
+ *     list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *  3. Neither the name of the copyright holder nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *  THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *  PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS
+ *  BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ *  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ *  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ *  LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ *  OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ *  DAMAGE.
+ *
+ * For more information please see http://opensource.org/licenses/BSD-3-Clause
+ */
+
+package org.cga.sctp.api.config;
+
+import org.cga.sctp.api.audit.EventType;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Configuration
+@ConfigurationProperties(prefix = "audit")
+public class AuditConfiguration {
+
+    /**
+     * Buffered writing of audit events.
+     */
+    private WriterConfig writer = new WriterConfig();
+
+    /**
+     * Local spool of events not yet written.
+     */
+    private SpoolConfig spool = new SpoolConfig();
+
+    /**
+     * Archival of old {@code event_logs} partitions.
+     */
+    private ArchiveConfig archive = new ArchiveConfig();
+
+    /**
+     * Audit log exports.
+     */
+    private ExportConfig export = new ExportConfig();
+
+    /**
+     * Collapsing of routine success events into aggregate rows.
+     */
+    private AggregationConfig aggregation = new AggregationConfig();
+
+    public WriterConfig getWriter() {
+        return writer;
+    }
+
+    public void setWriter(WriterConfig writer) {
+        this.writer = writer;
+    }
+
+    public SpoolConfig getSpool() {
+        return spool;
+    }
+
+    public void setSpool(SpoolConfig spool) {
+        this.spool = spool;
+    }
+
+    public ArchiveConfig getArchive() {
+        return archive;
+    }
+
+    public void setArchive(ArchiveConfig archive) {
+        this.archive = archive;
+    }
+
+    public ExportConfig getExport() {
+        return export;
+    }
+
+    public void setExport(ExportConfig export) {
+        this.export = export;
+    }
+
+    public AggregationConfig getAggregation() {
+        return aggregation;
+    }
+
+    public void setAggregation(AggregationConfig aggregation) {
+        this.aggregation = aggregation;
+    }
+
+    public enum OverflowPolicy {
+        /**
+         * Discard the event when the queue is full.
+         */
+        DROP,
+        /**
+         * Make the publisher wait for queue space, for up to {@link WriterConfig#blockTimeout} milliseconds, and
+         * discard the event after that.
+         */
+        BLOCK
+    }
+
+    public static class WriterConfig {
+        /**
+         * Maximum number of events waiting to be written.
+         */
+        private int queueCapacity = 10_000;
+
+        /**
+         * Maximum number of rows per INSERT statement. A full batch is written immediately.
+         */
+        private int batchSize = 200;
+
+        /**
+         * Maximum time (in milliseconds) an event waits for its batch to fill up.
+         */
+        private long flushInterval = 1000;
+
+        private OverflowPolicy overflowPolicy = OverflowPolicy.DROP;
+
+        /**
+         * Maximum time (in milliseconds) a publisher waits for queue space with {@link OverflowPolicy#BLOCK}.
+         */
+        private long blockTimeout = 100;
+
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        public void setQueueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+        }
+
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        public void setBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+        }
+
+        public long getFlushInterval() {
+            return flushInterval;
+        }
+
+        public void setFlushInterval(long flushInterval) {
+            this.flushInterval = flushInterval;
+        }
+
+        public OverflowPolicy getOverflowPolicy() {
+            return overflowPolicy;
+        }
+
+        public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+            this.overflowPolicy = overflowPolicy;
+        }
+
+        public long getBlockTimeout() {
+            return blockTimeout;
+        }
+
+        public void setBlockTimeout(long blockTimeout) {
+            this.blockTimeout = blockTimeout;
+        }
+    }
+
+    public static class SpoolConfig {
+        private boolean enabled;
+
+        /**
+         * Directory holding the segment files. Must not be shared between nodes.
+         */
+        private String directory = "spool/audit";
+
+        /**
+         * Size (in bytes) of a segment file.
+         */
+        private int segmentSize = 16 * 1024 * 1024;
+
+        /**
+         * Time (in milliseconds) to wait before replaying spooled events after a failed write.
+         */
+        private long retryInterval = 10_000;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public String getDirectory() {
+            return directory;
+        }
+
+        public void setDirectory(String directory) {
+            this.directory = directory;
+        }
+
+        public int getSegmentSize() {
+            return segmentSize;
+        }
+
+        public void setSegmentSize(int segmentSize) {
+            this.segmentSize = segmentSize;
+        }
+
+        public long getRetryInterval() {
+            return retryInterval;
+        }
+
+        public void setRetryInterval(long retryInterval) {
+            this.retryInterval = retryInterval;
+        }
+    }
+
+    public static class ArchiveConfig {
+        private boolean enabled;
+
+        /**
+         * Directory receiving the archive files, one gzip compressed NDJSON file per partition.
+         */
+        private String directory = "archive/audit";
+
+        /**
+         * Number of complete months kept in the database besides the current one.
+         */
+        private int retentionMonths = 6;
+
+        /**
+         * Number of monthly partitions created ahead of the current month.
+         */
+        private int monthsAhead = 2;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public String getDirectory() {
+            return directory;
+        }
+
+        public void setDirectory(String directory) {
+            this.directory = directory;
+        }
+
+        public int getRetentionMonths() {
+            return retentionMonths;
+        }
+
+        public void setRetentionMonths(int retentionMonths) {
+            this.retentionMonths = retentionMonths;
+        }
+
+        public int getMonthsAhead() {
+            return monthsAhead;
+        }
+
+        public void setMonthsAhead(int monthsAhead) {
+            this.monthsAhead = monthsAhead;
+        }
+    }
+
+    public static class ExportConfig {
+        /**
+         * Maximum number of exports running at the same time on this node. Each holds a database connection.
+         */
+        private int maxConcurrent = 2;
+
+        /**
+         * Time in milliseconds an export may take before the response is ended. Other async requests keep the
+         * default timeout.
+         */
+        private long timeout = 3_600_000;
+
+        public int getMaxConcurrent() {
+            return maxConcurrent;
+        }
+
+        public void setMaxConcurrent(int maxConcurrent) {
+            this.maxConcurrent = maxConcurrent;
+        }
+
+        public long getTimeout() {
+            return timeout;
+        }
+
+        public void setTimeout(long timeout) {
+            this.timeout = timeout;
+        }
+    }
+
+    public static class AggregationConfig {
+        private boolean enabled = true;
+
+        /**
+         * Length (in seconds) of an aggregation window. A window starts with the first event of its key.
+         */
+        private long window = 60;
+
+        /**
+         * How often (in milliseconds) closed windows are looked for and written.
+         */
+        private long flushInterval = 1000;
+
+        /**
+         * Maximum number of open windows. Events that would need another window are written individually.
+         */
+        private int maxWindows = 10_000;
+
+        /**
+         * Maximum number of distinct IP addresses recorded per window.
+         */
+        private int maxAddresses = 20;
+
+        /**
+         * Success events to collapse. Failures are never collapsed.
+         */
+        private List<AggregationPolicy> policies = new ArrayList<>();
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public long getWindow() {
+            return window;
+        }
+
+        public void setWindow(long window) {
+            this.window = window;
+        }
+
+        public long getFlushInterval() {
+            return flushInterval;
+        }
+
+        public void setFlushInterval(long flushInterval) {
+            this.flushInterval = flushInterval;
+        }
+
+        public int getMaxWindows() {
+            return maxWindows;
+        }
+
+        public void setMaxWindows(int maxWindows) {
+            this.maxWindows = maxWindows;
+        }
+
+        public int getMaxAddresses() {
+            return maxAddresses;
+        }
+
+        public void setMaxAddresses(int maxAddresses) {
+            this.maxAddresses = maxAddresses;
+        }
+
+        public List<AggregationPolicy> getPolicies() {
+            return policies;
+        }
+
+        public void setPolicies(List<AggregationPolicy> policies) {
+            this.policies = policies;
+        }
+    }
+
+    public static class AggregationPolicy {
+        private EventType eventType;
+
+        /**
+         * Event reason the policy applies to. Any reason when not set.
+         */
+        private String reason;
+
+        /**
+         * Number of events per window written individually before the rest are collapsed, so that keys with little
+         * activity keep their full records.
+         */
+        private int keepFirst = 1;
+
+        public EventType getEventType() {
+            return eventType;
+        }
+
+        public void setEventType(EventType eventType) {
+            this.eventType = eventType;
+        }
+
+        public String getReason() {
+            return reason;
+        }
+
+        public void setReason(String reason) {
+            this.reason = reason;
+        }
+
+        public int getKeepFirst() {
+            return keepFirst;
+        }
+
+        public void setKeepFirst(int keepFirst) {
+            this.keepFirst = keepFirst;
+        }
+    }
+}
@@ -56,6 +56,41 @@ public class AuthConfiguration extends BaseComponent {
 
     private SysAdminConfig admin;
 
+    /**
+     * Resolved principal caching.
+     */
+    private PrincipalCacheConfig principalCache = new PrincipalCacheConfig();
+
+    /**
+     * Password hashing pool.
+     */
+    private HashingConfig hashing = new HashingConfig();
+
+    /**
+     * Authentication attempt limits.
+     */
+    private ThrottleConfig throttle = new ThrottleConfig();
+
+    /**
+     * Refresh token settings.
+     */
+    private RefreshTokenConfig refreshToken = new RefreshTokenConfig();
+
+    /**
+     * API keys for machine clients.
+     */
+    private ApiKeyConfig apiKey = new ApiKeyConfig();
+
+    /**
+     * Signed-in device limits.
+     */
+    private SessionsConfig sessions = new SessionsConfig();
+
+    /**
+     * Token introspection response caching.
+     */
+    private IntrospectionConfig introspection = new IntrospectionConfig();
+
     public void setMaxAttempts(int maxAttempts) {
         this.maxAttempts = maxAttempts;
     }
@@ -72,6 +107,62 @@ public class AuthConfiguration extends BaseComponent {
         return admin;
     }
 
+    public PrincipalCacheConfig getPrincipalCache() {
+        return principalCache;
+    }
+
+    public void setPrincipalCache(PrincipalCacheConfig principalCache) {
+        this.principalCache = principalCache;
+    }
+
+    public HashingConfig getHashing() {
+        return hashing;
+    }
+
+    public void setHashing(HashingConfig hashing) {
+        this.hashing = hashing;
+    }
+
+    public ThrottleConfig getThrottle() {
+        return throttle;
+    }
+
+    public void setThrottle(ThrottleConfig throttle) {
+        this.throttle = throttle;
+    }
+
+    public RefreshTokenConfig getRefreshToken() {
+        return refreshToken;
+    }
+
+    public void setRefreshToken(RefreshTokenConfig refreshToken) {
+        this.refreshToken = refreshToken;
+    }
+
+    public ApiKeyConfig getApiKey() {
+        return apiKey;
+    }
+
+    public void setApiKey(ApiKeyConfig apiKey) {
+        this.apiKey = apiKey;
+    }
+
+    public SessionsConfig getSessions() {
+        return sessions;
+    }
+
+    public void setSessions(SessionsConfig sessions) {
+        this.sessions = sessions;
+    }
+
+    public IntrospectionConfig getIntrospection() {
+        return introspection;
+    }
+
+    public void setIntrospection(IntrospectionConfig introspection) {
+        this.introspection = introspection;
+    }
+
     @ConstructorBinding
     public static class SysAdminConfig {
         private final boolean apiLogin;
@@ -85,6 +176,320 @@ public class AuthConfiguration extends BaseComponent {
         }
     }
 
+    public static class PrincipalCacheConfig {
+        /**
+         * How long (in seconds) a resolved principal is kept. Capped at the JWT expiration time.
+         */
+        private long ttl = 300;
+
+        /**
+         * Maximum number of cached principals.
+         */
+        private int maxSize = 10_000;
+
+        public long getTtl() {
+            return ttl;
+        }
+
+        public void setTtl(long ttl) {
+            this.ttl = ttl;
+        }
+
+        public int getMaxSize() {
+            return maxSize;
+        }
+
+        public void setMaxSize(int maxSize) {
+            this.maxSize = maxSize;
+        }
+    }
+
+    public enum RejectPolicy {
+        /**
+         * Fail immediately when the queue is full.
+         */
+        REJECT,
+        /**
+         * Wait for queue space until the hashing timeout elapses.
+         */
+        WAIT
+    }
+
+    public static class HashingConfig {
+        /**
+         * Number of threads hashing passwords.
+         */
+        private int poolSize = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+
+        /**
+         * Maximum number of hashing tasks waiting for a thread.
+         */
+        private int queueCapacity = 64;
+
+        /**
+         * How long (in milliseconds) a caller waits for a hashing task, including time spent in the queue.
+         */
+        private long timeout = 5000;
+
+        /**
+         * Value (in seconds) of the Retry-After header sent when the pool is saturated.
+         */
+        private long retryAfter = 5;
+
+        private RejectPolicy rejectPolicy = RejectPolicy.REJECT;
+
+        /**
+         * Bcrypt cost factor for new hashes. 0 to calibrate at startup against {@link #targetLatency}.
+         */
+        private int cost = 12;
+
+        /**
+         * Bcrypt verification time (in milliseconds) the calibration aims for without exceeding it.
+         */
+        private long targetLatency = 250;
+
+        /**
+         * Calibration bounds.
+         */
+        private int minCost = 10;
+        private int maxCost = 16;
+
+        public int getPoolSize() {
+            return poolSize;
+        }
+
+        public void setPoolSize(int poolSize) {
+            this.poolSize = poolSize;
+        }
+
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        public void setQueueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+        }
+
+        public long getTimeout() {
+            return timeout;
+        }
+
+        public void setTimeout(long timeout) {
+            this.timeout = timeout;
+        }
+
+        public long getRetryAfter() {
+            return retryAfter;
+        }
+
+        public void setRetryAfter(long retryAfter) {
+            this.retryAfter = retryAfter;
+        }
+
+        public RejectPolicy getRejectPolicy() {
+            return rejectPolicy;
+        }
+
+        public void setRejectPolicy(RejectPolicy rejectPolicy) {
+            this.rejectPolicy = rejectPolicy;
+        }
+
+        public int getCost() {
+            return cost;
+        }
+
+        public void setCost(int cost) {
+            this.cost = cost;
+        }
+
+        public long getTargetLatency() {
+            return targetLatency;
+        }
+
+        public void setTargetLatency(long targetLatency) {
+            this.targetLatency = targetLatency;
+        }
+
+        public int getMinCost() {
+            return minCost;
+        }
+
+        public void setMinCost(int minCost) {
+            this.minCost = minCost;
+        }
+
+        public int getMaxCost() {
+            return maxCost;
+        }
+
+        public void setMaxCost(int maxCost) {
+            this.maxCost = maxCost;
+        }
+    }
+
+    public static class ThrottleConfig {
+        /**
+         * Length of the sliding window in seconds.
+         */
+        private long window = 60;
+
+        /**
+         * Number of slots the window is divided into.
+         */
+        private int slots = 6;
+
+        /**
+         * Maximum attempts per user name within the window.
+         */
+        private int userLimit = 10;
+
+        /**
+         * Maximum attempts per client address within the window.
+         */
+        private int addressLimit = 60;
+
+        /**
+         * Hash rows per counter sketch.
+         */
+        private int depth = 3;
+
+        /**
+         * Counters per hash row.
+         */
+        private int width = 16384;
+
+        public long getWindow() {
+            return window;
+        }
+
+        public void setWindow(long window) {
+            this.window = window;
+        }
+
+        public int getSlots() {
+            return slots;
+        }
+
+        public void setSlots(int slots) {
+            this.slots = slots;
+        }
+
+        public int getUserLimit() {
+            return userLimit;
+        }
+
+        public void setUserLimit(int userLimit) {
+            this.userLimit = userLimit;
+        }
+
+        public int getAddressLimit() {
+            return addressLimit;
+        }
+
+        public void setAddressLimit(int addressLimit) {
+            this.addressLimit = addressLimit;
+        }
+
+        public int getDepth() {
+            return depth;
+        }
+
+        public void setDepth(int depth) {
+            this.depth = depth;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public void setWidth(int width) {
+            this.width = width;
+        }
+    }
+
+    public static class RefreshTokenConfig {
+        /**
+         * Lifespan (in hours) of a refresh token family, counted from the password login that started it.
+         */
+        private long ttl = 24 * 7;
+
+        public long getTtl() {
+            return ttl;
+        }
+
+        public void setTtl(long ttl) {
+            this.ttl = ttl;
+        }
+    }
+
+    public static class ApiKeyConfig {
+        /**
+         * HMAC key used to digest API keys. API keys are disabled when not set.
+         */
+        private String secret;
+
+        public String getSecret() {
+            return secret;
+        }
+
+        public void setSecret(String secret) {
+            this.secret = secret;
+        }
+    }
+
+    public static class SessionsConfig {
+        /**
+         * Maximum concurrent sessions (devices) per user. The oldest sessions are revoked beyond this. 0 for no limit.
+         */
+        private int maxPerUser = 5;
+
+        /**
+         * Maximum rows deleted per statement when removing expired sessions.
+         */
+        private int sweepBatchSize = 1000;
+
+        public int getMaxPerUser() {
+            return maxPerUser;
+        }
+
+        public void setMaxPerUser(int maxPerUser) {
+            this.maxPerUser = maxPerUser;
+        }
+
+        public int getSweepBatchSize() {
+            return sweepBatchSize;
+        }
+
+        public void setSweepBatchSize(int sweepBatchSize) {
+            this.sweepBatchSize = sweepBatchSize;
+        }
+    }
+
+    public static class IntrospectionConfig {
+        /**
+         * Time (in seconds) an introspection response is cached. Bounds how late a revocation is reported.
+         */
+        private long ttl = 5;
+
+        private int maxSize = 10000;
+
+        public long getTtl() {
+            return ttl;
+        }
+
+        public void setTtl(long ttl) {
+            this.ttl = ttl;
+        }
+
+        public int getMaxSize() {
+            return maxSize;
+        }
+
+        public void setMaxSize(int maxSize) {
+            this.maxSize = maxSize;
+        }
+    }
+
     @PostConstruct
     private void showWarning() {
         if (getAdmin().canAdminUseApi()) {
@@ -41,6 +41,8 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.validation.annotation.Validated;
 
 import javax.validation.constraints.*;
+import java.util.ArrayList;
+import java.util.List;
 
 @Validated
 @Configuration
@@ -56,7 +58,8 @@ public class JwtConfiguration {
     private String issuer;
 
     /**
-     * Shared key used for signing JWTs
+     * Shared key used for signing JWTs when no {@link #activeKey} is set, and for verifying tokens without a key id
+     * (see {@link #acceptUnkeyedTokens})
      */
     @NotBlank(message = "Secret key is required")
     @Length(min = 32, message = "Secret key must be at least 32 bytes")
@@ -69,6 +72,41 @@ public class JwtConfiguration {
     @Max(value = MAX_TTL_MINUTES, message = "Maximum JWT expiration time must not exceed {value} minutes.")
     private long expiration;
 
+    /**
+     * Maximum number of verified tokens kept in memory
+     */
+    @Min(value = 0, message = "JWT cache size must not be negative.")
+    private int cacheSize = 10_000;
+
+    /**
+     * Whether to accept tokens whose access token claims are a JSON encoded string (the format used before claims
+     * were emitted as a native JWT claim). Can be switched off once all such tokens have expired.
+     */
+    private boolean acceptLegacyClaims = true;
+
+    /**
+     * Id (kid) of the key in {@link #keys} used to sign new tokens. When empty, tokens are signed with the
+     * {@link #secret} and carry no key id.
+     */
+    private String activeKey;
+
+    /**
+     * Whether to accept tokens without a key id, verified with the {@link #secret}, although an {@link #activeKey} is
+     * set. Only needed for one expiration period after switching to an active key; always true without one.
+     */
+    private boolean acceptUnkeyedTokens;
+
+    /**
+     * Signing and verify-only keys
+     */
+    private List<KeyConfig> keys = new ArrayList<>();
+
+    /**
+     * JSON file with the active key and keys, in the same shape as this configuration. When set, it takes precedence
+     * over {@link #activeKey} and {@link #keys} and is reloaded when it changes.
+     */
+    private String keyFile;
+
     public String getIssuer() {
         return issuer;
     }
@@ -92,4 +130,119 @@ public class JwtConfiguration {
     public void setExpiration(long expiration) {
         this.expiration = expiration;
     }
+
+    public int getCacheSize() {
+        return cacheSize;
+    }
+
+    public void setCacheSize(int cacheSize) {
+        this.cacheSize = cacheSize;
+    }
+
+    public boolean isAcceptLegacyClaims() {
+        return acceptLegacyClaims;
+    }
+
+    public void setAcceptLegacyClaims(boolean acceptLegacyClaims) {
+        this.acceptLegacyClaims = acceptLegacyClaims;
+    }
+
+    public String getActiveKey() {
+        return activeKey;
+    }
+
+    public void setActiveKey(String activeKey) {
+        this.activeKey = activeKey;
+    }
+
+    public boolean isAcceptUnkeyedTokens() {
+        return acceptUnkeyedTokens;
+    }
+
+    public void setAcceptUnkeyedTokens(boolean acceptUnkeyedTokens) {
+        this.acceptUnkeyedTokens = acceptUnkeyedTokens;
+    }
+
+    public List<KeyConfig> getKeys() {
+        return keys;
+    }
+
+    public void setKeys(List<KeyConfig> keys) {
+        this.keys = keys;
+    }
+
+    public String getKeyFile() {
+        return keyFile;
+    }
+
+    public void setKeyFile(String keyFile) {
+        this.keyFile = keyFile;
+    }
+
+    public static class KeyConfig {
+        /**
+         * Key id, sent in the kid header of tokens signed with this key
+         */
+        private String kid;
+
+        /**
+         * HS256 or ES256
+         */
+        private String algorithm = "HS256";
+
+        /**
+         * HS256 shared secret, at least 32 characters
+         */
+        private String secret;
+
+        /**
+         * ES256 public key, base64 encoded X.509 (PEM armour is ignored)
+         */
+        private String publicKey;
+
+        /**
+         * ES256 private key, base64 encoded PKCS#8 (PEM armour is ignored). Omit on nodes that only verify tokens
+         */
+        private String privateKey;
+
+        public String getKid() {
+            return kid;
+        }
+
+        public void setKid(String kid) {
+            this.kid = kid;
+        }
+
+        public String getAlgorithm() {
+            return algorithm;
+        }
+
+        public void setAlgorithm(String algorithm) {
+            this.algorithm = algorithm;
+        }
+
+        public String getSecret() {
+            return secret;
+        }
+
+        public void setSecret(String secret) {
+            this.secret = secret;
+        }
+
+        public String getPublicKey() {
+            return publicKey;
+        }
+
+        public void setPublicKey(String publicKey) {
+            this.publicKey = publicKey;
+        }
+
+        public String getPrivateKey() {
+            return privateKey;
+        }
+
+        public void setPrivateKey(String privateKey) {
+            this.privateKey = privateKey;
+        }
+    }
 }
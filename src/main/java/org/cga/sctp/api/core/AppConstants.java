@@ -37,8 +37,24 @@ package org.cga.sctp.api.core;
 
 public interface AppConstants {
     String JWT_HEADER_NAME = "Authorization";
+    String API_KEY_HEADER_NAME = "X-API-Key";
     String JWT_ACCESS_TOKEN_CLAIM = "claims";
     String API_SECURITY_REQUIREMENT_NAME = "bearerToken";
     String AUTHENTICATION_PATH = "/authenticate";
+    String REFRESH_PATH = AUTHENTICATION_PATH + "/refresh";
     String SYSTEM_ADMIN_ROLE = "ROLE_SYSTEM_ADMIN";
+    /**
+     * Paths that bypass security altogether. A trailing {@code /**} matches the path and everything below it.
+     */
+    String[] PUBLIC_PATHS = {
+            "/v2/api-docs",
+            "/configuration/ui",
+            "/configuration/security",
+            "/swagger-resources/**",
+            "/swagger-ui.html",
+            "/swagger-ui/**",
+            "/webjars/**",
+            "/api-doc/**",
+            "/api-doc.yaml"
+    };
 }
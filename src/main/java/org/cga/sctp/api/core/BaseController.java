@@ -35,6 +35,8 @@
 
 package org.cga.sctp.api.core;
 
+import org.cga.sctp.api.security.PasswordHashingUnavailableException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.FieldError;
@@ -65,4 +67,18 @@ public class BaseController extends BaseComponent {
 
         return ResponseEntity.badRequest().body(apiErrors);
     }
+
+    /**
+     * Tells the client to back off when password hashing capacity is exhausted
+     *
+     * @param ex .
+     * @return .
+     */
+    @ExceptionHandler(PasswordHashingUnavailableException.class)
+    public final ResponseEntity<Void> handlePasswordHashingUnavailable(PasswordHashingUnavailableException ex) {
+        LOG.warn("{} Asking client to retry after {} seconds.", ex.getMessage(), ex.getRetryAfter());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfter()))
+                .build();
+    }
 }
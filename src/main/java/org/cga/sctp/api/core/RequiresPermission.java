@@ -44,10 +44,17 @@ import java.lang.annotation.*;
 /**
  * Marks a controller endpoint as requiring permissions to invoke.
  * A {@link javax.servlet.http.HttpServletResponse#SC_FORBIDDEN 403} response code will be attached for documentation.
+ * <p>
+ * When {@link #value()} is empty the annotation is for documentation only and access is decided by other annotations
+ * such as {@link org.springframework.security.access.annotation.Secured @Secured}.
  */
 @Documented
 @Target({ElementType.METHOD, ElementType.TYPE})
 @Retention(RetentionPolicy.RUNTIME)
 @ApiResponse(responseCode = "403", description = "Principal does not have the right permissions to perform this action.", content = @Content)
 public @interface RequiresPermission {
+    /**
+     * @return Permissions, any of which grants access to the endpoint
+     */
+    String[] value() default {};
 }
@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2021 CGA Technologies, a trading name of Charlie Goldsmith Associates Ltd
+ *  All rights reserved, released under the BSD-3 licence.
+ *
+ * CGA Technologies develop and use this software as part of its work
+ *  but the software itself is open-source software; you can redistribute it and/or modify
+ *  it under the terms of the BSD licence below
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice, this
+ *     list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *  3. Neither the name of the copyright holder nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *  THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *  PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS
+ *  BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ *  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ *  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ *  LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ *  OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ *  DAMAGE.
+ *
+ * For more information please see http://opensource.org/licenses/BSD-3-Clause
+ */
+
+package org.cga.sctp.api.security;
+
+import org.cga.sctp.api.user.ApiUser;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+
+import java.io.Serializable;
+import java.math.BigInteger;
+
+/**
+ * Authentication of an {@link ApiUser}. Besides the granted authorities it carries the role's {@link PermissionSet}
+ * and the snapshot the set was resolved from, so that permission checks are a bit test instead of a scan over the
+ * authorities. Instances are immutable and may be shared between requests: the details are a copy of the user taken
+ * when authenticating, and the inherited setters throw.
+ */
+public class ApiUserAuthentication extends UsernamePasswordAuthenticationToken {
+    private final PermissionSet permissions;
+    private final transient RolePermissionSnapshot snapshot;
+
+    public ApiUserAuthentication(ApiUser apiUser, RolePermissionSnapshot snapshot) {
+        super(apiUser.getUserName(), null, snapshot.getAuthorities(apiUser.getRole().getName()));
+        this.snapshot = snapshot;
+        this.permissions = snapshot.getPermissionSet(apiUser.getRole().getName());
+        super.setDetails(new UserView(apiUser));
+    }
+
+    /**
+     * @return The user as it was when authenticated
+     */
+    public UserView getUser() {
+        return (UserView) getDetails();
+    }
+
+    @Override
+    public void setDetails(Object details) {
+        throw new UnsupportedOperationException("ApiUserAuthentication is immutable.");
+    }
+
+    @Override
+    public void setAuthenticated(boolean authenticated) {
+        throw new UnsupportedOperationException("ApiUserAuthentication is immutable.");
+    }
+
+    /**
+     * There are no credentials to erase.
+     */
+    @Override
+    public void eraseCredentials() {
+    }
+
+    public PermissionSet getPermissions() {
+        return permissions;
+    }
+
+    public RolePermissionSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    public boolean hasPermission(String permission) {
+        return permissions.contains(snapshot.getPermissionId(permission));
+    }
+
+    /**
+     * Read-only copy of the authenticated user's identity.
+     */
+    public static final class UserView implements Serializable {
+        private final BigInteger id;
+        private final String userName;
+        private final String firstName;
+        private final String lastName;
+        private final String email;
+        private final String roleName;
+
+        private UserView(ApiUser apiUser) {
+            this.id = apiUser.getId();
+            this.userName = apiUser.getUserName();
+            this.firstName = apiUser.getFirstName();
+            this.lastName = apiUser.getLastName();
+            this.email = apiUser.getEmail();
+            this.roleName = apiUser.getRole().getName();
+        }
+
+        public BigInteger getId() {
+            return id;
+        }
+
+        public String getUserName() {
+            return userName;
+        }
+
+        public String getFirstName() {
+            return firstName;
+        }
+
+        public String getLastName() {
+            return lastName;
+        }
+
+        public String getEmail() {
+            return email;
+        }
+
+        public String getRoleName() {
+            return roleName;
+        }
+    }
+}
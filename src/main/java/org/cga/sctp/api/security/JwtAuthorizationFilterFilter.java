@@ -35,20 +35,13 @@
 
 package org.cga.sctp.api.security;
 
-import com.auth0.jwt.interfaces.DecodedJWT;
-import org.cga.sctp.api.auth.AccessTokenClaims;
 import org.cga.sctp.api.core.AppConstants;
-import org.cga.sctp.api.security.access_control.UserPermission;
-import org.cga.sctp.api.user.ApiUser;
-import org.cga.sctp.api.user.ApiUserService;
+import org.cga.sctp.api.security.apikey.ApiKeyRegistry;
 import org.cga.sctp.api.utils.LocaleUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
-import org.springframework.security.core.GrantedAuthority;
-import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.GenericFilterBean;
@@ -59,23 +52,21 @@ import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
 import java.io.IOException;
-import java.util.function.Function;
-import java.util.stream.Collectors;
 
 /**
- * This filter checks for a JTW token in every authenticated request.
+ * This filter checks for a JTW token (or an API key, for machine clients) in every authenticated request.
  */
 @Component
 public class JwtAuthorizationFilterFilter extends GenericFilterBean {
 
     @Autowired
-    private JwtUtil jwtUtil;
+    private TokenAuthenticator tokenAuthenticator;
 
     @Autowired
-    private ApiUserService userService;
+    private RouteClassifier routeClassifier;
 
     @Autowired
-    private SecurityService securityService;
+    private ApiKeyRegistry apiKeyRegistry;
 
     private final Logger logger;
 
@@ -86,74 +77,38 @@ public class JwtAuthorizationFilterFilter extends GenericFilterBean {
     @Override
     public void doFilter(ServletRequest servletRequest, ServletResponse servletResponse, FilterChain chain) throws IOException, ServletException {
         String jwt;
+        final String apiKey;
         final HttpServletRequest request;
         final Authentication authentication;
 
         request = ((HttpServletRequest) servletRequest);
 
-        if (getRequestUri(request).equalsIgnoreCase(AppConstants.AUTHENTICATION_PATH)) {
+        if (routeClassifier.classify(request) != RouteClassifier.RouteType.SECURED) {
             SecurityContextHolder.clearContext();
             chain.doFilter(servletRequest, servletResponse);
             return;
         }
 
-        if (!LocaleUtils.isStringNullOrEmpty(jwt = request.getHeader(AppConstants.JWT_HEADER_NAME))) {
+        if (!LocaleUtils.isStringNullOrEmpty(apiKey = request.getHeader(AppConstants.API_KEY_HEADER_NAME))) {
+            // Machine clients
+            authentication = apiKeyRegistry.authenticate(apiKey);
+        } else if (!LocaleUtils.isStringNullOrEmpty(jwt = request.getHeader(AppConstants.JWT_HEADER_NAME))) {
             if (jwt.startsWith("Bearer")) {
                 jwt = jwt.substring(7);
             }
+            authentication = tokenAuthenticator.authenticate(jwt);
+        } else {
+            authentication = null;
+        }
 
-            authentication = getAuthenticationDetailsFromToken(jwt);
-            if (authentication != null) {
-                SecurityContextHolder.getContext().setAuthentication(authentication);
-                logger.debug("Authenticated principal: {}", authentication.getPrincipal());
-                chain.doFilter(request, servletResponse);
-                return;
-            }
+        if (authentication != null) {
+            SecurityContextHolder.getContext().setAuthentication(authentication);
+            logger.debug("Authenticated principal: {}", authentication.getPrincipal());
+            chain.doFilter(request, servletResponse);
+            return;
         }
 
         SecurityContextHolder.clearContext();
         chain.doFilter(servletRequest, servletResponse);
     }
-
-    private Authentication getAuthenticationDetailsFromToken(String token) {
-        DecodedJWT jwt;
-        ApiUser apiUser;
-        AccessTokenClaims claims;
-
-        if ((jwt = jwtUtil.parseJwt(token)) == null) {
-            return null;
-        }
-
-        claims = jwtUtil.getAccessTokenClaims(jwt);
-        if ((apiUser = userService.findByUserNameAndSessionId(claims.getUserName(), jwt.getId())) == null) {
-            logger.warn("Invalid username and session pair for {}: Most likely a revoked session.", claims.getUserName());
-            return null;
-        }
-
-        if (!apiUser.isActive() || apiUser.isDeleted() || !apiUser.getRole().isActive()) {
-            return null;
-        }
-
-        // manually load permissions
-        apiUser.setAuthorities(
-                securityService.getRolePermissions(apiUser.getRole())
-                        .stream()
-                        .map((Function<UserPermission, GrantedAuthority>) userPermission -> new SimpleGrantedAuthority(userPermission.getName()))
-                        .collect(Collectors.toList())
-        );
-
-        UsernamePasswordAuthenticationToken upat
-                = new UsernamePasswordAuthenticationToken(apiUser.getUserName(), null, apiUser.getAuthorities());
-        upat.setDetails(apiUser);
-
-        return upat;
-    }
-
-    private String getRequestUri(HttpServletRequest request) {
-        final String contextPath = request.getContextPath(), requestUri = request.getRequestURI();
-        if (LocaleUtils.isStringNullOrEmpty(contextPath) || contextPath.equalsIgnoreCase("/")) {
-            return requestUri;
-        }
-        return requestUri.substring(contextPath.length());
-    }
 }
@@ -35,13 +35,17 @@
 
 package org.cga.sctp.api.security;
 
+import java.time.LocalDateTime;
+
 public final class JwtInfo {
     private final String jti;
     private final String token;
+    private final LocalDateTime expiresAt;
 
-    public JwtInfo(String jti, String token) {
+    public JwtInfo(String jti, String token, LocalDateTime expiresAt) {
         this.jti = jti;
         this.token = token;
+        this.expiresAt = expiresAt;
     }
 
     public String getJti() {
@@ -51,4 +55,8 @@ public final class JwtInfo {
     public String getToken() {
         return token;
     }
+
+    public LocalDateTime getExpiresAt() {
+        return expiresAt;
+    }
 }
@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2021 CGA Technologies, a trading name of Charlie Goldsmith Associates Ltd
+ *  All rights reserved, released under the BSD-3 licence.
+ *
+ * CGA Technologies develop and use this software as part of its work
+ *  but the software itself is open-source software; you can redistribute it and/or modify
+ *  it under the terms of the BSD licence below
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice, this
+ *     list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *  3. Neither the name of the copyright holder nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *  THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *  PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS
+ *  BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ *  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ *  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ *  LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ *  OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ *  DAMAGE.
+ *
+ * For more information please see http://opensource.org/licenses/BSD-3-Clause
+ */
+
+package org.cga.sctp.api.security;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.algorithms.Algorithm;
+import com.auth0.jwt.interfaces.JWTVerifier;
+import org.cga.sctp.api.config.JwtConfiguration;
+import org.cga.sctp.api.core.AppConstants;
+import org.cga.sctp.api.utils.LocaleUtils;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.interfaces.ECPrivateKey;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.*;
+
+/**
+ * <p>Immutable set of JWT keys: the key new tokens are signed with and the keys tokens are verified with, indexed by
+ * key id (kid). Verifiers are built once per key when the ring is built.</p>
+ * <p>The legacy {@code jwt.secret} signs new tokens when no active key is set. Tokens without a key id are only
+ * accepted then, or while {@code jwt.accept_unkeyed_tokens} is set during the switch to key ids, so that a leaked
+ * secret can be retired like any other key.</p>
+ */
+final class JwtKeyRing {
+    private final SigningKey signingKey;
+    private final JWTVerifier legacyVerifier;
+    private final Map<String, JWTVerifier> verifiers;
+
+    private JwtKeyRing(SigningKey signingKey, JWTVerifier legacyVerifier, Map<String, JWTVerifier> verifiers) {
+        this.signingKey = signingKey;
+        this.legacyVerifier = legacyVerifier;
+        this.verifiers = verifiers;
+    }
+
+    SigningKey getSigningKey() {
+        return signingKey;
+    }
+
+    /**
+     * @param kid Key id from the token header, or null
+     * @return Verifier for the key or null if the key is not in the ring, or the token has no key id and unkeyed
+     * tokens are not accepted
+     */
+    JWTVerifier getVerifier(String kid) {
+        return kid == null ? legacyVerifier : verifiers.get(kid);
+    }
+
+    Set<String> getKeyIds() {
+        return verifiers.keySet();
+    }
+
+    /**
+     * Build a key ring
+     *
+     * @param configuration JWT configuration providing the issuer and legacy secret
+     * @param activeKey     Id of the key to sign with, or empty to sign with the legacy secret
+     * @param keys          Keys
+     * @param acceptUnkeyed Whether to verify tokens without a key id with the legacy secret even though an active
+     *                      key is set
+     * @return .
+     * @throws IllegalArgumentException When a key is invalid or the active key cannot sign
+     */
+    static JwtKeyRing build(JwtConfiguration configuration, String activeKey, List<JwtConfiguration.KeyConfig> keys,
+                            boolean acceptUnkeyed) {
+        final Algorithm legacy = Algorithm.HMAC256(configuration.getSecret());
+        final Map<String, JWTVerifier> verifiers = new HashMap<>();
+        SigningKey signingKey = null;
+
+        for (JwtConfiguration.KeyConfig key : keys) {
+            if (LocaleUtils.isStringNullOrEmpty(key.getKid())) {
+                throw new IllegalArgumentException("JWT key without kid.");
+            }
+            if (verifiers.containsKey(key.getKid())) {
+                throw new IllegalArgumentException("Duplicate JWT key " + key.getKid() + ".");
+            }
+            final Algorithm algorithm = algorithm(key);
+            verifiers.put(key.getKid(), verifier(algorithm, configuration));
+            if (key.getKid().equals(activeKey)) {
+                if ("ES256".equalsIgnoreCase(key.getAlgorithm()) && LocaleUtils.isStringNullOrEmpty(key.getPrivateKey())) {
+                    throw new IllegalArgumentException("Active JWT key " + activeKey + " has no private key.");
+                }
+                signingKey = new SigningKey(key.getKid(), algorithm);
+            }
+        }
+
+        if (LocaleUtils.isStringNullOrEmpty(activeKey)) {
+            signingKey = new SigningKey(null, legacy);
+            acceptUnkeyed = true;
+        } else if (signingKey == null) {
+            throw new IllegalArgumentException("Active JWT key " + activeKey + " is not configured.");
+        }
+
+        return new JwtKeyRing(
+                signingKey,
+                acceptUnkeyed ? verifier(legacy, configuration) : null,
+                Collections.unmodifiableMap(verifiers)
+        );
+    }
+
+    private static JWTVerifier verifier(Algorithm algorithm, JwtConfiguration configuration) {
+        return JWT.require(algorithm)
+                .withIssuer(configuration.getIssuer())
+                .withClaimPresence(AppConstants.JWT_ACCESS_TOKEN_CLAIM)
+                .build();
+    }
+
+    private static Algorithm algorithm(JwtConfiguration.KeyConfig key) {
+        switch (key.getAlgorithm() == null ? "" : key.getAlgorithm().toUpperCase(Locale.ROOT)) {
+            case "HS256":
+                if (key.getSecret() == null || key.getSecret().length() < 32) {
+                    throw new IllegalArgumentException("JWT key " + key.getKid() + " must be at least 32 bytes.");
+                }
+                return Algorithm.HMAC256(key.getSecret());
+            case "ES256":
+                if (LocaleUtils.isStringNullOrEmpty(key.getPublicKey())) {
+                    throw new IllegalArgumentException("JWT key " + key.getKid() + " has no public key.");
+                }
+                try {
+                    final KeyFactory factory = KeyFactory.getInstance("EC");
+                    return Algorithm.ECDSA256(
+                            (ECPublicKey) factory.generatePublic(new X509EncodedKeySpec(decode(key.getPublicKey()))),
+                            LocaleUtils.isStringNullOrEmpty(key.getPrivateKey())
+                                    ? null
+                                    : (ECPrivateKey) factory.generatePrivate(new PKCS8EncodedKeySpec(decode(key.getPrivateKey())))
+                    );
+                } catch (GeneralSecurityException | ClassCastException e) {
+                    throw new IllegalArgumentException("JWT key " + key.getKid() + " is not a valid EC key.", e);
+                }
+            default:
+                throw new IllegalArgumentException("JWT key " + key.getKid() + " has unsupported algorithm " + key.getAlgorithm() + ".");
+        }
+    }
+
+    private static byte[] decode(String pem) {
+        return Base64.getMimeDecoder().decode(pem.replaceAll("-----[A-Z ]+-----", ""));
+    }
+
+    static final class SigningKey {
+        private final String kid;
+        private final Algorithm algorithm;
+        private final Map<String, Object> header;
+
+        SigningKey(String kid, Algorithm algorithm) {
+            this.kid = kid;
+            this.algorithm = algorithm;
+            this.header = kid == null ? Map.of() : Map.of("kid", kid);
+        }
+
+        String getKid() {
+            return kid;
+        }
+
+        Algorithm getAlgorithm() {
+            return algorithm;
+        }
+
+        /**
+         * @return Header claims for tokens signed with this key
+         */
+        Map<String, Object> getHeader() {
+            return header;
+        }
+    }
+}
@@ -36,40 +36,122 @@
 package org.cga.sctp.api.security;
 
 import com.auth0.jwt.JWT;
-import com.auth0.jwt.JWTVerifier;
-import com.auth0.jwt.algorithms.Algorithm;
 import com.auth0.jwt.exceptions.JWTVerificationException;
+import com.auth0.jwt.interfaces.Claim;
 import com.auth0.jwt.interfaces.DecodedJWT;
+import com.auth0.jwt.interfaces.JWTVerifier;
 import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
 import org.cga.sctp.api.auth.AccessTokenClaims;
 import org.cga.sctp.api.config.JwtConfiguration;
 import org.cga.sctp.api.core.AppConstants;
 import org.cga.sctp.api.core.BaseComponent;
 import org.cga.sctp.api.user.ApiUser;
+import org.cga.sctp.api.utils.LocaleUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.time.temporal.ChronoUnit;
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Component
 public final class JwtUtil extends BaseComponent {
     final private Gson gson;
-    final private Algorithm algorithm;
-    final private JWTVerifier jwtVerifier;
     final private JwtConfiguration jwtConfiguration;
 
+    /**
+     * Signing and verification keys. Replaced as a whole when the key file changes.
+     */
+    private volatile JwtKeyRing keyRing;
+    private long keyFileModifiedAt;
+
+    /**
+     * Tokens that passed verification, keyed by the SHA-256 digest of the raw token.
+     */
+    final private ConcurrentHashMap<ByteBuffer, VerifiedToken> verifiedTokens;
+
+    private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
     @Autowired
     public JwtUtil(JwtConfiguration jwtConfiguration, Gson gson) {
         this.gson = gson;
         this.jwtConfiguration = jwtConfiguration;
-        this.algorithm = Algorithm.HMAC256(jwtConfiguration.getSecret());
-        this.jwtVerifier = JWT.require(algorithm)
-                .withIssuer(jwtConfiguration.getIssuer())
-                .withClaimPresence(AppConstants.JWT_ACCESS_TOKEN_CLAIM)
-                .build();
+        this.verifiedTokens = new ConcurrentHashMap<>();
+        if (LocaleUtils.isStringNullOrEmpty(jwtConfiguration.getKeyFile())) {
+            this.keyRing = JwtKeyRing.build(jwtConfiguration, jwtConfiguration.getActiveKey(), jwtConfiguration.getKeys(),
+                    jwtConfiguration.isAcceptUnkeyedTokens());
+        } else {
+            this.keyRing = loadKeyFile(Paths.get(jwtConfiguration.getKeyFile()));
+        }
+        LOG.info("JWT keys: {}, signing with {}.", keyRing.getKeyIds(), describeSigningKey());
+    }
+
+    /**
+     * Reload the key file if it has been modified. An invalid file is logged and the current keys are kept.
+     */
+    @Scheduled(
+            initialDelayString = "${jwt.key_reload_interval}",
+            fixedDelayString = "${jwt.key_reload_interval}"
+    )
+    public synchronized void reloadKeys() {
+        if (LocaleUtils.isStringNullOrEmpty(jwtConfiguration.getKeyFile())) {
+            return;
+        }
+        final Path path = Paths.get(jwtConfiguration.getKeyFile());
+        try {
+            if (Files.getLastModifiedTime(path).toMillis() == keyFileModifiedAt) {
+                return;
+            }
+            keyRing = loadKeyFile(path);
+            // Tokens signed with keys that were removed must not be served from the cache
+            clearVerifiedTokens();
+            LOG.info("Reloaded JWT keys: {}, signing with {}.", keyRing.getKeyIds(), describeSigningKey());
+        } catch (IOException | RuntimeException e) {
+            LOG.error("Cannot reload JWT keys from {}. Keeping the current keys.", path, e);
+        }
+    }
+
+    private JwtKeyRing loadKeyFile(Path path) {
+        final KeyFile keyFile;
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            keyFileModifiedAt = Files.getLastModifiedTime(path).toMillis();
+            keyFile = gson.fromJson(reader, KeyFile.class);
+        } catch (IOException | JsonParseException e) {
+            throw new IllegalArgumentException("Cannot read JWT key file " + path + ".", e);
+        }
+        if (keyFile == null) {
+            throw new IllegalArgumentException("JWT key file " + path + " is empty.");
+        }
+        return JwtKeyRing.build(jwtConfiguration, keyFile.activeKey, keyFile.keys == null ? List.of() : keyFile.keys,
+                keyFile.acceptUnkeyedTokens);
+    }
+
+    private String describeSigningKey() {
+        final String kid = keyRing.getSigningKey().getKid();
+        return kid == null ? "jwt.secret" : kid;
     }
 
     /**
@@ -80,20 +162,26 @@ public final class JwtUtil extends BaseComponent {
      */
     public JwtInfo generateJwt(ApiUser apiUser) {
         final Instant now;
+        final Instant expiresAt;
         final String jti;
+        final JwtKeyRing.SigningKey signingKey;
 
         now = Instant.now();
+        expiresAt = now.plus(jwtConfiguration.getExpiration(), ChronoUnit.MINUTES);
         jti = UUID.randomUUID().toString();
+        signingKey = keyRing.getSigningKey();
         return new JwtInfo(
                 jti,
                 JWT.create()
+                        .withHeader(signingKey.getHeader())
                         .withJWTId(jti)
                         .withIssuedAt(Date.from(now))
                         .withSubject(apiUser.getUserName())
                         .withIssuer(jwtConfiguration.getIssuer())
-                        .withExpiresAt(Date.from(now.plus(jwtConfiguration.getExpiration(), ChronoUnit.MINUTES)))
-                        .withClaim(AppConstants.JWT_ACCESS_TOKEN_CLAIM, gson.toJson(new AccessTokenClaims(apiUser)))
-                        .sign(algorithm)
+                        .withExpiresAt(Date.from(expiresAt))
+                        .withClaim(AppConstants.JWT_ACCESS_TOKEN_CLAIM, new AccessTokenClaims(apiUser).toMap())
+                        .sign(signingKey.getAlgorithm()),
+                LocalDateTime.ofInstant(expiresAt, ZoneId.systemDefault())
         );
     }
 
@@ -105,17 +193,99 @@ public final class JwtUtil extends BaseComponent {
      */
     public DecodedJWT parseJwt(String token) {
         try {
-            return this.jwtVerifier.verify(token);
+            final DecodedJWT jwt = JWT.decode(token);
+            final JWTVerifier verifier = keyRing.getVerifier(jwt.getKeyId());
+            if (verifier == null) {
+                LOG.debug("Rejected JWT {}: Unknown key {}.", jwt.getId(), jwt.getKeyId());
+                return null;
+            }
+            return verifier.verify(jwt);
         } catch (JWTVerificationException e) {
             LOG.debug("Error parsing JWT.", e);
             return null;
         }
     }
 
+    /**
+     * Verify the given JWT and decode its access token claims. Tokens that were verified before are served from
+     * memory until they expire.
+     *
+     * @param token Signed JWT token
+     * @return The verified token or null if the token is invalid (structurally or logically)
+     */
+    public VerifiedToken verify(String token) {
+        final long now = System.currentTimeMillis();
+        final ByteBuffer key = digest(token);
+        VerifiedToken verified = verifiedTokens.get(key);
+
+        if (verified != null) {
+            if (!verified.isExpired(now)) {
+                return verified;
+            }
+            verifiedTokens.remove(key, verified);
+            return null;
+        }
+
+        final DecodedJWT jwt = parseJwt(token);
+        if (jwt == null) {
+            return null;
+        }
+
+        final AccessTokenClaims claims = getAccessTokenClaims(jwt);
+        if (claims == null) {
+            LOG.debug("Rejected JWT {}: Unsupported access token claims.", jwt.getId());
+            return null;
+        }
+
+        verified = new VerifiedToken(jwt, claims);
+        if (verifiedTokens.size() >= jwtConfiguration.getCacheSize()) {
+            verifiedTokens.values().removeIf(entry -> entry.isExpired(now));
+        }
+        if (verifiedTokens.size() < jwtConfiguration.getCacheSize()) {
+            verifiedTokens.put(key, verified);
+        }
+        return verified;
+    }
+
+    /**
+     * Drop all cached verification results.
+     */
+    public void clearVerifiedTokens() {
+        verifiedTokens.clear();
+    }
+
+    private static ByteBuffer digest(String token) {
+        return ByteBuffer.wrap(SHA256.get().digest(token.getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    /**
+     * Read the access token claims from a verified JWT.
+     *
+     * @param jwt Verified JWT
+     * @return Access token claims or null if the claims are in a format that is not accepted
+     */
     public AccessTokenClaims getAccessTokenClaims(DecodedJWT jwt) {
-        return gson.fromJson(
-                jwt.getClaim(AppConstants.JWT_ACCESS_TOKEN_CLAIM).asString(),
-                AccessTokenClaims.class
-        );
+        final Claim claim = jwt.getClaim(AppConstants.JWT_ACCESS_TOKEN_CLAIM);
+        final Map<String, Object> map = claim.asMap();
+
+        if (map != null) {
+            return AccessTokenClaims.fromMap(jwt.getSubject(), map);
+        }
+
+        // Tokens issued before the claims became a native JWT claim carry them as a JSON encoded string
+        if (jwtConfiguration.isAcceptLegacyClaims() && claim.asString() != null) {
+            return gson.fromJson(claim.asString(), AccessTokenClaims.class);
+        }
+
+        return null;
+    }
+
+    /**
+     * Layout of {@code jwt.key_file}.
+     */
+    private static final class KeyFile {
+        private String activeKey;
+        private boolean acceptUnkeyedTokens;
+        private List<JwtConfiguration.KeyConfig> keys;
     }
 }
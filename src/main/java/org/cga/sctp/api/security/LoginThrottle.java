@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2021 CGA Technologies, a trading name of Charlie Goldsmith Associates Ltd
+ *  All rights reserved, released under the BSD-3 licence.
+ *
+ * CGA Technologies develop and use this software as part of its work
+ *  but the software itself is open-source software; you can redistribute it and/or modify
+ *  it under the terms of the BSD licence below
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice, this
+ *     list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *  3. Neither the name of the copyright holder nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *  THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *  PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS
+ *  BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ *  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ *  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ *  LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ *  OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ *  DAMAGE.
+ *
+ * For more information please see http://opensource.org/licenses/BSD-3-Clause
+ */
+
+package org.cga.sctp.api.security;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.cga.sctp.api.config.AuthConfiguration;
+import org.cga.sctp.api.core.BaseComponent;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits authentication attempts per user name and per client address over a sliding window, before any database
+ * access or password hashing takes place.
+ */
+@Component
+public class LoginThrottle extends BaseComponent {
+
+    private final int userLimit;
+    private final int addressLimit;
+    private final long retryAfter;
+    private final SlidingWindowSketch users;
+    private final SlidingWindowSketch addresses;
+    private final Counter userRejections;
+    private final Counter addressRejections;
+
+    @Autowired
+    public LoginThrottle(AuthConfiguration authConfiguration, MeterRegistry registry) {
+        final AuthConfiguration.ThrottleConfig config = authConfiguration.getThrottle();
+        final long window = TimeUnit.SECONDS.toMillis(config.getWindow());
+
+        this.userLimit = config.getUserLimit();
+        this.addressLimit = config.getAddressLimit();
+        this.retryAfter = Math.max(1, config.getWindow() / config.getSlots());
+        this.users = new SlidingWindowSketch(window, config.getSlots(), config.getDepth(), config.getWidth());
+        this.addresses = new SlidingWindowSketch(window, config.getSlots(), config.getDepth(), config.getWidth());
+        this.userRejections = Counter.builder("auth.throttle.rejected").tag("key", "user").register(registry);
+        this.addressRejections = Counter.builder("auth.throttle.rejected").tag("key", "address").register(registry);
+    }
+
+    /**
+     * Record an authentication attempt.
+     *
+     * @param userName Requested user name
+     * @param address  Client address
+     * @return Whether the attempt may proceed
+     */
+    public boolean tryAcquire(String userName, String address) {
+        final long now = System.currentTimeMillis();
+
+        if (addresses.increment(address, now) > addressLimit) {
+            addressRejections.increment();
+            LOG.debug("Throttled authentication attempt from {}.", address);
+            return false;
+        }
+        if (users.increment(userName.toLowerCase(Locale.ROOT), now) > userLimit) {
+            userRejections.increment();
+            LOG.debug("Throttled authentication attempt for {}.", userName);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return Number of seconds a throttled client should wait before retrying
+     */
+    public long getRetryAfter() {
+        return retryAfter;
+    }
+}
@@ -0,0 +1,253 @@
+/*
+ * Copyright (C) 2021 CGA Technologies, a trading name of Charlie Goldsmith Associates Ltd
+ *  All rights reserved, released under the BSD-3 licence.
+ *
+ * CGA Technologies develop and use this software as part of its work
+ *  but the software itself is open-source software; you can redistribute it and/or modify
+ *  it under the terms of the BSD licence below
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice, this
+ *     list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *  3. Neither the name of the copyright holder nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *  THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *  PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS
+ *  BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ *  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ *  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ *  LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ *  OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ *  DAMAGE.
+ *
+ * For more information please see http://opensource.org/licenses/BSD-3-Clause
+ */
+
+package org.cga.sctp.api.security;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.cga.sctp.api.config.AuthConfiguration;
+import org.cga.sctp.api.core.BaseComponent;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>Runs password hashing and verification on a dedicated, bounded pool so that bursts of logins cannot tie up
+ * request threads.</p>
+ * <p>When the queue is full a task is either rejected straight away or, with the {@code wait} policy, waits for queue
+ * space until the configured timeout. Either way, callers get a {@link PasswordHashingUnavailableException} when the
+ * task cannot be run in time.</p>
+ * <p>The blocking methods keep the calling thread waiting for the result. Request handlers use
+ * {@link #matchesAsync(String, String)} instead, which only holds the caller while submitting (and, with the
+ * {@code wait} policy, while waiting for queue space).</p>
+ * <p>A task whose caller timed out or stopped waiting while it was queued is skipped. One that is already running
+ * cannot be cancelled, as hashing does not respond to interrupts: it runs to the end on its worker and is counted as
+ * abandoned ({@code auth.hashing.abandoned}).</p>
+ */
+@Component
+public class PasswordHashingExecutor extends BaseComponent {
+
+    private final long timeout;
+    private final long retryAfter;
+    private final PasswordEncoder passwordEncoder;
+    private final ThreadPoolExecutor executor;
+
+    private final Timer matchTimer;
+    private final Timer encodeTimer;
+    private final Timer queueTimer;
+    private final Counter rejectedCounter;
+    private final Counter timeoutCounter;
+    private final Counter abandonedCounter;
+
+    @Autowired
+    public PasswordHashingExecutor(AuthConfiguration authConfiguration, PasswordEncoder passwordEncoder, MeterRegistry registry) {
+        final AuthConfiguration.HashingConfig config = authConfiguration.getHashing();
+        final AtomicInteger threadCount = new AtomicInteger();
+
+        this.passwordEncoder = passwordEncoder;
+        this.timeout = config.getTimeout();
+        this.retryAfter = config.getRetryAfter();
+        this.executor = new ThreadPoolExecutor(
+                config.getPoolSize(),
+                config.getPoolSize(),
+                0L,
+                TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(config.getQueueCapacity()),
+                runnable -> {
+                    final Thread thread = new Thread(runnable, "password-hashing-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                config.getRejectPolicy() == AuthConfiguration.RejectPolicy.WAIT
+                        ? waitForQueueSpace()
+                        : new ThreadPoolExecutor.AbortPolicy()
+        );
+        // All workers exist up front, so queued tasks are always picked up
+        this.executor.prestartAllCoreThreads();
+
+        this.matchTimer = Timer.builder("auth.hashing.latency").tag("operation", "matches").register(registry);
+        this.encodeTimer = Timer.builder("auth.hashing.latency").tag("operation", "encode").register(registry);
+        this.queueTimer = Timer.builder("auth.hashing.queue.wait").register(registry);
+        this.rejectedCounter = Counter.builder("auth.hashing.rejected").register(registry);
+        this.timeoutCounter = Counter.builder("auth.hashing.timeouts").register(registry);
+        this.abandonedCounter = Counter.builder("auth.hashing.abandoned").register(registry);
+        Gauge.builder("auth.hashing.queue.depth", executor, e -> e.getQueue().size()).register(registry);
+        Gauge.builder("auth.hashing.active", executor, ThreadPoolExecutor::getActiveCount).register(registry);
+    }
+
+    /**
+     * Verify a raw password against an encoded one.
+     *
+     * @see PasswordEncoder#matches(CharSequence, String)
+     */
+    public boolean matches(String rawPassword, String encodedPassword) {
+        return run(matchTimer, () -> passwordEncoder.matches(rawPassword, encodedPassword));
+    }
+
+    /**
+     * Verify a raw password against an encoded one without waiting for the result. The future completes on a
+     * hashing thread, or with a {@link PasswordHashingUnavailableException} when the timeout elapses first.
+     *
+     * @throws PasswordHashingUnavailableException when the pool is saturated
+     * @see PasswordEncoder#matches(CharSequence, String)
+     */
+    public CompletableFuture<Boolean> matchesAsync(String rawPassword, String encodedPassword) {
+        return runAsync(matchTimer, () -> passwordEncoder.matches(rawPassword, encodedPassword));
+    }
+
+    /**
+     * Encode a raw password.
+     *
+     * @see PasswordEncoder#encode(CharSequence)
+     */
+    public String encode(String rawPassword) {
+        return run(encodeTimer, () -> passwordEncoder.encode(rawPassword));
+    }
+
+    /**
+     * Check whether a stored hash should be replaced with one produced by {@link #encode(String)}. This does not
+     * hash, so it runs on the caller's thread.
+     *
+     * @see PasswordEncoder#upgradeEncoding(String)
+     */
+    public boolean upgradeEncoding(String encodedPassword) {
+        return passwordEncoder.upgradeEncoding(encodedPassword);
+    }
+
+    private <T> T run(Timer timer, Callable<T> callable) {
+        final CompletableFuture<T> result = runAsync(timer, callable);
+
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            result.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new PasswordHashingUnavailableException("Interrupted while waiting for password hashing.", retryAfter);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private <T> CompletableFuture<T> runAsync(Timer timer, Callable<T> callable) {
+        final long submittedAt = System.nanoTime();
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        final AtomicBoolean started = new AtomicBoolean();
+        final FutureTask<Void> task = new FutureTask<>(() -> {
+            queueTimer.record(System.nanoTime() - submittedAt, TimeUnit.NANOSECONDS);
+            // Nobody is waiting for the result any more
+            if (result.isDone() || !started.compareAndSet(false, true)) {
+                return null;
+            }
+            try {
+                result.complete(timer.recordCallable(callable));
+            } catch (Exception e) {
+                result.completeExceptionally(e);
+            }
+            return null;
+        });
+
+        submit(task);
+
+        CompletableFuture.delayedExecutor(timeout - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - submittedAt),
+                TimeUnit.MILLISECONDS).execute(() -> {
+            if (result.completeExceptionally(new PasswordHashingUnavailableException("Password hashing timed out.", retryAfter))) {
+                timeoutCounter.increment();
+                abandon(task, started);
+            }
+        });
+        // Cancelled by a caller that stopped waiting
+        result.whenComplete((value, e) -> {
+            if (result.isCancelled()) {
+                abandon(task, started);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Make sure a task whose caller no longer waits for it does not start. A task that has started is left running.
+     */
+    private void abandon(FutureTask<Void> task, AtomicBoolean started) {
+        if (started.compareAndSet(false, true)) {
+            task.cancel(false);
+        } else {
+            abandonedCounter.increment();
+        }
+    }
+
+    private void submit(Runnable task) {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            rejectedCounter.increment();
+            throw new PasswordHashingUnavailableException("Password hashing pool is saturated.", retryAfter);
+        }
+    }
+
+    /**
+     * Handler for the {@code wait} policy: waits for queue space in the caller's thread.
+     */
+    private RejectedExecutionHandler waitForQueueSpace() {
+        return (runnable, executor) -> {
+            try {
+                if (executor.isShutdown() || !executor.getQueue().offer(runnable, timeout, TimeUnit.MILLISECONDS)) {
+                    throw new RejectedExecutionException();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException(e);
+            }
+        };
+    }
+
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2021 CGA Technologies, a trading name of Charlie Goldsmith Associates Ltd
+ *  All rights reserved, released under the BSD-3 licence.
+ *
+ * CGA Technologies develop and use this software as part of its work
+ *  but the software itself is open-source software; you can redistribute it and/or modify
+ *  it under the terms of the BSD licence below
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice, this
+ *     list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *  3. Neither the name of the copyright holder nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *  THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *  PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS
+ *  BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ *  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ *  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ *  LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ *  OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ *  DAMAGE.
+ *
+ * For more information please see http://opensource.org/licenses/BSD-3-Clause
+ */
+
+package org.cga.sctp.api.security;
+
+import org.springframework.security.access.AccessDecisionVoter;
+import org.springframework.security.access.ConfigAttribute;
+import org.springframework.security.access.annotation.Jsr250SecurityConfig;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+
+import java.util.Collection;
+
+/**
+ * <p>Votes on permission attributes, i.e. values of {@code @Secured(UserPermissions.*)} and
+ * {@link org.cga.sctp.api.core.RequiresPermission}.</p>
+ * <p>Access is granted when the principal holds any of the permissions. For an {@link ApiUserAuthentication} that is
+ * a bit test against its {@link PermissionSet}; other authentications fall back to comparing authority names.
+ * Unknown permissions are denied.</p>
+ */
+public class PermissionVoter implements AccessDecisionVoter<Object> {
+    private static final String ROLE_PREFIX = "ROLE_";
+    private static final String AUTHENTICATED_PREFIX = "IS_AUTHENTICATED_";
+
+    @Override
+    public boolean supports(ConfigAttribute attribute) {
+        final String name = attribute.getAttribute();
+        return name != null
+                && !(attribute instanceof Jsr250SecurityConfig)
+                && !name.startsWith(ROLE_PREFIX)
+                && !name.startsWith(AUTHENTICATED_PREFIX);
+    }
+
+    @Override
+    public boolean supports(Class<?> clazz) {
+        return true;
+    }
+
+    @Override
+    public int vote(Authentication authentication, Object object, Collection<ConfigAttribute> attributes) {
+        int result = ACCESS_ABSTAIN;
+
+        if (authentication == null) {
+            return ACCESS_DENIED;
+        }
+
+        for (ConfigAttribute attribute : attributes) {
+            if (!supports(attribute)) {
+                continue;
+            }
+            result = ACCESS_DENIED;
+            if (holdsPermission(authentication, attribute.getAttribute())) {
+                return ACCESS_GRANTED;
+            }
+        }
+
+        return result;
+    }
+
+    private boolean holdsPermission(Authentication authentication, String permission) {
+        if (authentication instanceof ApiUserAuthentication) {
+            return ((ApiUserAuthentication) authentication).hasPermission(permission);
+        }
+        for (GrantedAuthority authority : authentication.getAuthorities()) {
+            if (permission.equals(authority.getAuthority())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2021 CGA Technologies, a trading name of Charlie Goldsmith Associates Ltd
+ *  All rights reserved, released under the BSD-3 licence.
+ *
+ * CGA Technologies develop and use this software as part of its work
+ *  but the software itself is open-source software; you can redistribute it and/or modify
+ *  it under the terms of the BSD licence below
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice, this
+ *     list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *  3. Neither the name of the copyright holder nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *  THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *  PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS
+ *  BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ *  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ *  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ *  LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ *  OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ *  DAMAGE.
+ *
+ * For more information please see http://opensource.org/licenses/BSD-3-Clause
+ */
+
+package org.cga.sctp.api.security;
+
+import org.cga.sctp.api.config.AuthConfiguration;
+import org.cga.sctp.api.config.JwtConfiguration;
+import org.cga.sctp.api.core.BaseComponent;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Bounded cache of principals resolved by {@link JwtAuthorizationFilterFilter}.</p>
+ * <p>Entries are keyed by the token id (jti) and are only returned when the user name matches as well. An entry lives
+ * for at most {@code auth.principal_cache.ttl} seconds and never outlives the token it was resolved for.</p>
+ */
+@Component
+public class PrincipalCache extends BaseComponent {
+
+    private final int maxSize;
+    private final long ttlMillis;
+    private final ConcurrentHashMap<String, CachedPrincipal> principals;
+
+    @Autowired
+    public PrincipalCache(AuthConfiguration authConfiguration, JwtConfiguration jwtConfiguration) {
+        this.maxSize = authConfiguration.getPrincipalCache().getMaxSize();
+        this.ttlMillis = Math.min(
+                TimeUnit.SECONDS.toMillis(authConfiguration.getPrincipalCache().getTtl()),
+                TimeUnit.MINUTES.toMillis(jwtConfiguration.getExpiration())
+        );
+        this.principals = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Look up a cached principal
+     *
+     * @param userName User name in the token claims
+     * @param jti      Token id
+     * @return The cached authentication or null if there's no (live) entry for the given pair
+     */
+    public ApiUserAuthentication get(String userName, String jti) {
+        final CachedPrincipal principal = principals.get(jti);
+        if (principal == null) {
+            return null;
+        }
+        if (principal.isExpired(System.currentTimeMillis())) {
+            principals.remove(jti, principal);
+            return null;
+        }
+        return principal.getUserName().equals(userName) ? principal.authentication : null;
+    }
+
+    /**
+     * Cache a resolved principal
+     *
+     * @param jti            Token id
+     * @param authentication Authentication resolved for the token
+     * @param tokenExpiry    Expiry time of the token in milliseconds since epoch
+     */
+    public void put(String jti, ApiUserAuthentication authentication, long tokenExpiry) {
+        final long now = System.currentTimeMillis();
+        if (ttlMillis <= 0 || tokenExpiry <= now) {
+            return;
+        }
+        if (principals.size() >= maxSize) {
+            principals.values().removeIf(principal -> principal.isExpired(now));
+            if (principals.size() >= maxSize) {
+                LOG.debug("Principal cache is full ({} entries).", maxSize);
+                return;
+            }
+        }
+        principals.put(jti, new CachedPrincipal(authentication, Math.min(now + ttlMillis, tokenExpiry)));
+    }
+
+    /**
+     * Remove all cached entries belonging to the given user. This must be called whenever the user's session
+     * is rotated or the account is locked.
+     *
+     * @param userName User name
+     */
+    public void evictUser(String userName) {
+        principals.values().removeIf(principal -> principal.getUserName().equals(userName));
+    }
+
+    /**
+     * Remove all cached entries of users holding one of the given roles.
+     *
+     * @param roles Role names
+     */
+    public void evictRoles(Set<String> roles) {
+        principals.values().removeIf(principal -> roles.contains(principal.getRoleName()));
+    }
+
+    public void clear() {
+        principals.clear();
+    }
+
+    public int size() {
+        return principals.size();
+    }
+
+    private static final class CachedPrincipal {
+        private final long expiresAt;
+        private final ApiUserAuthentication authentication;
+
+        private CachedPrincipal(ApiUserAuthentication authentication, long expiresAt) {
+            this.expiresAt = expiresAt;
+            this.authentication = authentication;
+        }
+
+        String getUserName() {
+            return authentication.getUser().getUserName();
+        }
+
+        String getRoleName() {
+            return authentication.getUser().getRoleName();
+        }
+
+        boolean isExpired(long now) {
+            return now >= expiresAt;
+        }
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2021 CGA Technologies, a trading name of Charlie Goldsmith Associates Ltd
+ *  All rights reserved, released under the BSD-3 licence.
+ *
+ * CGA Technologies develop and use this software as part of its work
+ *  but the software itself is open-source software; you can redistribute it and/or modify
+ *  it under the terms of the BSD licence below
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice, this
+ *     list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *  3. Neither the name of the copyright holder nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *  THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *  PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS
+ *  BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ *  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ *  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ *  LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ *  OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ *  DAMAGE.
+ *
+ * For more information please see http://opensource.org/licenses/BSD-3-Clause
+ */
+
+package org.cga.sctp.api.security;
+
+import org.cga.sctp.api.security.access_control.UserPermission;
+import org.cga.sctp.api.security.access_control.UserRole;
+import org.cga.sctp.api.security.access_control.UserRolePermission;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * <p>Immutable view of the {@code roles}, {@code role_permissions} and {@code permissions} tables.</p>
+ * <p>The version is a digest of the snapshot's content, so two nodes that loaded the same data report the same
+ * version regardless of when they loaded it.</p>
+ */
+public final class RolePermissionSnapshot {
+    private final String version;
+    private final LocalDateTime loadedAt;
+    private final Map<String, UserRole> roles;
+    private final Map<String, List<UserPermission>> rolePermissions;
+    private final Map<String, List<GrantedAuthority>> roleAuthorities;
+    private final Map<String, Integer> permissionIds;
+    private final Map<String, PermissionSet> rolePermissionSets;
+
+    private RolePermissionSnapshot(String version, LocalDateTime loadedAt, Map<String, UserRole> roles,
+                                   Map<String, List<UserPermission>> rolePermissions,
+                                   Map<String, List<GrantedAuthority>> roleAuthorities,
+                                   Map<String, Integer> permissionIds,
+                                   Map<String, PermissionSet> rolePermissionSets) {
+        this.version = version;
+        this.loadedAt = loadedAt;
+        this.roles = roles;
+        this.rolePermissions = rolePermissions;
+        this.roleAuthorities = roleAuthorities;
+        this.permissionIds = permissionIds;
+        this.rolePermissionSets = rolePermissionSets;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    public LocalDateTime getLoadedAt() {
+        return loadedAt;
+    }
+
+    public int getRoleCount() {
+        return roles.size();
+    }
+
+    public UserRole getRole(String name) {
+        return roles.get(name);
+    }
+
+    public List<UserPermission> getPermissions(String role) {
+        return rolePermissions.getOrDefault(role, List.of());
+    }
+
+    public List<GrantedAuthority> getAuthorities(String role) {
+        return roleAuthorities.getOrDefault(role, List.of());
+    }
+
+    /**
+     * Get the id of a permission within this snapshot. Ids are dense, assigned in permission name order and are
+     * only meaningful together with the {@link PermissionSet}s of the same snapshot.
+     *
+     * @param permission Permission name
+     * @return The permission id or -1 if the permission does not exist
+     */
+    public int getPermissionId(String permission) {
+        return permissionIds.getOrDefault(permission, -1);
+    }
+
+    public PermissionSet getPermissionSet(String role) {
+        return rolePermissionSets.getOrDefault(role, PermissionSet.EMPTY);
+    }
+
+    /**
+     * Build a snapshot from table rows. Role permissions are resolved the same way as the {@code getRolePermissions}
+     * stored procedure, i.e. by joining {@code role_permissions} to {@code permissions} on name.
+     *
+     * @param roles           Rows in {@code roles}
+     * @param permissions     Rows in {@code permissions}
+     * @param rolePermissions Rows in {@code role_permissions}
+     * @return .
+     */
+    public static RolePermissionSnapshot of(Iterable<UserRole> roles, Iterable<UserPermission> permissions,
+                                            Iterable<UserRolePermission> rolePermissions) {
+        final Map<String, UserRole> roleMap = new TreeMap<>();
+        final Map<String, UserPermission> permissionMap = new TreeMap<>();
+        final Map<String, List<UserPermission>> grants = new TreeMap<>();
+
+        roles.forEach(role -> roleMap.put(role.getName(), role));
+        permissions.forEach(permission -> permissionMap.put(permission.getName(), permission));
+
+        for (UserRolePermission rolePermission : rolePermissions) {
+            final UserPermission permission = permissionMap.get(rolePermission.getPermission());
+            if (permission != null) {
+                grants.computeIfAbsent(rolePermission.getRole(), r -> new ArrayList<>()).add(permission);
+            }
+        }
+
+        final Map<String, List<UserPermission>> permissionsByRole = new HashMap<>();
+        final Map<String, List<GrantedAuthority>> authoritiesByRole = new HashMap<>();
+        final Map<String, Integer> permissionIds = new HashMap<>();
+        final Map<String, PermissionSet> permissionSetsByRole = new HashMap<>();
+        final StringBuilder content = new StringBuilder();
+
+        permissionMap.keySet().forEach(name -> permissionIds.put(name, permissionIds.size()));
+        roleMap.values().forEach(role -> content.append(role.getName()).append(':').append(role.isActive()).append(';'));
+        for (Map.Entry<String, List<UserPermission>> entry : grants.entrySet()) {
+            final List<UserPermission> list = entry.getValue();
+            final List<GrantedAuthority> authorities = new ArrayList<>(list.size());
+            final int[] ids = new int[list.size()];
+
+            list.sort(Comparator.comparing(UserPermission::getName));
+            content.append(entry.getKey()).append('=');
+            for (int i = 0; i < ids.length; i++) {
+                final UserPermission permission = list.get(i);
+                ids[i] = permissionIds.get(permission.getName());
+                authorities.add(new SimpleGrantedAuthority(permission.getName()));
+                content.append(permission.getName()).append(':').append(permission.isActive()).append(',');
+            }
+            content.append(';');
+
+            permissionsByRole.put(entry.getKey(), List.copyOf(list));
+            authoritiesByRole.put(entry.getKey(), List.copyOf(authorities));
+            permissionSetsByRole.put(entry.getKey(), PermissionSet.of(ids));
+        }
+
+        return new RolePermissionSnapshot(
+                digest(content),
+                LocalDateTime.now(),
+                Collections.unmodifiableMap(new HashMap<>(roleMap)),
+                Collections.unmodifiableMap(permissionsByRole),
+                Collections.unmodifiableMap(authoritiesByRole),
+                Collections.unmodifiableMap(permissionIds),
+                Collections.unmodifiableMap(permissionSetsByRole)
+        );
+    }
+
+    /**
+     * Build a snapshot that replaces the given roles and keeps every other role as it is in this snapshot.
+     *
+     * @param changed         Names of the roles to replace. Roles missing from {@code roles} are removed
+     * @param roles           Current rows in {@code roles} for the changed roles
+     * @param permissions     Rows in {@code permissions}
+     * @param rolePermissions Current rows in {@code role_permissions} for the changed roles
+     * @return .
+     */
+    public RolePermissionSnapshot withRoles(Collection<String> changed, Iterable<UserRole> roles,
+                                            Iterable<UserPermission> permissions,
+                                            Iterable<UserRolePermission> rolePermissions) {
+        final List<UserRole> mergedRoles = new ArrayList<>();
+        final List<UserRolePermission> mergedRolePermissions = new ArrayList<>();
+
+        for (UserRole role : this.roles.values()) {
+            if (!changed.contains(role.getName())) {
+                mergedRoles.add(role);
+            }
+        }
+        for (Map.Entry<String, List<UserPermission>> entry : this.rolePermissions.entrySet()) {
+            if (changed.contains(entry.getKey())) {
+                continue;
+            }
+            for (UserPermission permission : entry.getValue()) {
+                final UserRolePermission rolePermission = new UserRolePermission();
+                rolePermission.setRole(entry.getKey());
+                rolePermission.setPermission(permission.getName());
+                mergedRolePermissions.add(rolePermission);
+            }
+        }
+        roles.forEach(mergedRoles::add);
+        rolePermissions.forEach(mergedRolePermissions::add);
+
+        return of(mergedRoles, permissions, mergedRolePermissions);
+    }
+
+    private static String digest(CharSequence content) {
+        try {
+            final byte[] hash = MessageDigest.getInstance("SHA-256")
+                    .digest(content.toString().getBytes(StandardCharsets.UTF_8));
+            final StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < 8; i++) {
+                sb.append(String.format("%02x", hash[i]));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2021 CGA Technologies, a trading name of Charlie Goldsmith Associates Ltd
+ *  All rights reserved, released under the BSD-3 licence.
+ *
+ * CGA Technologies develop and use this software as part of its work
+ *  but the software itself is open-source software; you can redistribute it and/or modify
+ *  it under the terms of the BSD licence below
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice, this
+ *     list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *  3. Neither the name of the copyright holder nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *  THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *  PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS
+ *  BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ *  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ *  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ *  LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ *  OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ *  DAMAGE.
+ *
+ * For more information please see http://opensource.org/licenses/BSD-3-Clause
+ */
+
+package org.cga.sctp.api.security;
+
+import org.cga.sctp.api.core.AppConstants;
+import org.springframework.http.HttpMethod;
+import org.springframework.security.web.util.matcher.RequestMatcher;
+import org.springframework.stereotype.Component;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.Arrays;
+
+/**
+ * <p>Classifies request paths as {@link RouteType#PUBLIC public}, {@link RouteType#AUTHENTICATION authentication} or
+ * {@link RouteType#SECURED secured} in a single pass over the path.</p>
+ * <p>Routes are compiled once into a trie over path segments. Segments are matched case-insensitively and in place,
+ * so classifying a request does not allocate. A pattern ending in {@code /**} matches the path itself and everything
+ * below it; anything that does not match a route is secured.</p>
+ */
+@Component
+public class RouteClassifier {
+
+    public enum RouteType {
+        PUBLIC,
+        AUTHENTICATION,
+        SECURED
+    }
+
+    private final Node root;
+
+    public RouteClassifier() {
+        root = new Node(null);
+        for (String path : AppConstants.PUBLIC_PATHS) {
+            register(path, RouteType.PUBLIC);
+        }
+        register(AppConstants.AUTHENTICATION_PATH, RouteType.AUTHENTICATION);
+        register(AppConstants.REFRESH_PATH, RouteType.AUTHENTICATION);
+    }
+
+    private void register(String pattern, RouteType type) {
+        Node node = root;
+        for (String segment : pattern.split("/")) {
+            if (segment.isEmpty()) {
+                continue;
+            }
+            if (segment.equals("**")) {
+                node.subtree = type;
+                return;
+            }
+            node = node.getOrAddChild(segment);
+        }
+        node.exact = type;
+    }
+
+    /**
+     * Classify a request by its URI, excluding the context path
+     *
+     * @param request Request
+     * @return Route type
+     */
+    public RouteType classify(HttpServletRequest request) {
+        final String contextPath = request.getContextPath();
+        return classify(request.getRequestURI(), contextPath == null ? 0 : contextPath.length());
+    }
+
+    /**
+     * Classify a path
+     *
+     * @param path Path
+     * @param from Index at which the path starts, e.g. the length of the context path
+     * @return Route type
+     */
+    public RouteType classify(String path, int from) {
+        final int end = path.length();
+        RouteType match = RouteType.SECURED;
+        Node node = root;
+        int i = from;
+
+        while (true) {
+            if (node.subtree != null) {
+                match = node.subtree;
+            }
+            while (i < end && path.charAt(i) == '/') {
+                i++;
+            }
+            if (i == end) {
+                return node.exact != null ? node.exact : match;
+            }
+            int next = path.indexOf('/', i);
+            if (next < 0) {
+                next = end;
+            }
+            if ((node = node.findChild(path, i, next - i)) == null) {
+                return match;
+            }
+            i = next;
+        }
+    }
+
+    /**
+     * @param type   Route type to match
+     * @param method Request method to match or null for any method
+     * @return A matcher for requests of the given route type
+     */
+    public RequestMatcher matcher(RouteType type, HttpMethod method) {
+        return request -> (method == null || method.matches(request.getMethod())) && classify(request) == type;
+    }
+
+    private static final class Node {
+        private final String segment;
+        private Node[] children = new Node[0];
+        private RouteType exact;
+        private RouteType subtree;
+
+        Node(String segment) {
+            this.segment = segment;
+        }
+
+        Node findChild(String path, int offset, int length) {
+            for (Node child : children) {
+                if (child.segment.length() == length && path.regionMatches(true, offset, child.segment, 0, length)) {
+                    return child;
+                }
+            }
+            return null;
+        }
+
+        Node getOrAddChild(String segment) {
+            Node child = findChild(segment, 0, segment.length());
+            if (child == null) {
+                children = Arrays.copyOf(children, children.length + 1);
+                children[children.length - 1] = child = new Node(segment);
+            }
+            return child;
+        }
+    }
+}
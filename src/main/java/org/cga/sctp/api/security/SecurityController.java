@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2021 CGA Technologies, a trading name of Charlie Goldsmith Associates Ltd
+ *  All rights reserved, released under the BSD-3 licence.
+ *
+ * CGA Technologies develop and use this software as part of its work
+ *  but the software itself is open-source software; you can redistribute it and/or modify
+ *  it under the terms of the BSD licence below
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice, this
+ *     list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *  3. Neither the name of the copyright holder nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *  THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *  PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS
+ *  BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ *  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ *  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ *  LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ *  OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ *  DAMAGE.
+ *
+ * For more information please see http://opensource.org/licenses/BSD-3-Clause
+ */
+
+package org.cga.sctp.api.security;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.cga.sctp.api.core.IncludeGeneralResponses;
+import org.cga.sctp.api.core.RequiresPermission;
+import org.cga.sctp.api.core.SecuredController;
+import org.cga.sctp.api.security.access_control.UserPermissions;
+import org.cga.sctp.api.security.session.SessionRevocationResponse;
+import org.cga.sctp.api.security.session.UserSessionRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequestMapping("/security")
+@Tag(name = "Security", description = "Endpoint for inspecting security related state of this node.")
+public class SecurityController extends SecuredController {
+
+    @Autowired
+    private SecurityService securityService;
+
+    @Autowired
+    private UserSessionRegistry sessionRegistry;
+
+    @Autowired
+    private PrincipalCache principalCache;
+
+    @Autowired
+    private TokenIntrospectionService introspectionService;
+
+    @GetMapping("/permissions/snapshot")
+    @Operation(description = "Returns the version and load time of the role permissions snapshot used by this node.")
+    @IncludeGeneralResponses
+    public PermissionSnapshotResponse getPermissionSnapshot() {
+        return new PermissionSnapshotResponse(securityService.getPermissionSnapshot());
+    }
+
+    @PostMapping("/introspect")
+    @Operation(description = "Returns whether an access token is active, and if so its subject and permissions (RFC 7662). Responses are cached for a few seconds.")
+    @IncludeGeneralResponses
+    @RequiresPermission(UserPermissions.INTROSPECT_TOKENS)
+    public TokenIntrospectionResponse introspectToken(@RequestParam("token") String token) {
+        return introspectionService.introspect(token);
+    }
+
+    @DeleteMapping("/sessions/users/{userName}")
+    @Operation(description = "Signs the user out on all devices.")
+    @IncludeGeneralResponses
+    @RequiresPermission(UserPermissions.MANAGE_SESSIONS)
+    public SessionRevocationResponse revokeUserSessions(@PathVariable("userName") String userName) {
+        final int revoked = sessionRegistry.revokeByUser(userName);
+        principalCache.evictUser(userName);
+        return new SessionRevocationResponse(revoked);
+    }
+
+    @DeleteMapping("/sessions/roles/{role}")
+    @Operation(description = "Signs out all users with the given role on all devices.")
+    @IncludeGeneralResponses
+    @RequiresPermission(UserPermissions.MANAGE_SESSIONS)
+    public SessionRevocationResponse revokeRoleSessions(@PathVariable("role") String role) {
+        final int revoked = sessionRegistry.revokeByRole(role);
+        principalCache.clear();
+        return new SessionRevocationResponse(revoked);
+    }
+}
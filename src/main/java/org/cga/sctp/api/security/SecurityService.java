@@ -36,14 +36,15 @@
 package org.cga.sctp.api.security;
 
 import org.cga.sctp.api.core.BaseService;
-import org.cga.sctp.api.security.access_control.UserPermission;
-import org.cga.sctp.api.security.access_control.UserPermissionRepository;
-import org.cga.sctp.api.security.access_control.UserRole;
-import org.cga.sctp.api.security.access_control.UserRoleRepository;
+import org.cga.sctp.api.security.access_control.*;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.GrantedAuthority;
 import org.springframework.stereotype.Service;
 
-import java.util.List;
+import javax.annotation.PostConstruct;
+import java.time.LocalDateTime;
+import java.util.*;
 
 @Service
 public class SecurityService extends BaseService {
@@ -54,7 +55,141 @@ public class SecurityService extends BaseService {
     @Autowired
     private UserPermissionRepository permissionRepository;
 
+    @Autowired
+    private UserRolePermissionRepository rolePermissionRepository;
+
+    @Autowired
+    private PermissionChangeRepository changeRepository;
+
+    @Autowired
+    private PrincipalCache principalCache;
+
+    /**
+     * Change log rows read per poll.
+     */
+    private static final int CHANGE_BATCH_SIZE = 1000;
+
+    /**
+     * Ids below the cursor that are read again on every poll. Ids are assigned when a row is inserted but become
+     * visible when the transaction commits, so a row may appear after rows with higher ids.
+     */
+    private static final int CHANGE_CURSOR_OVERLAP = 100;
+
+    private volatile RolePermissionSnapshot snapshot;
+
+    /**
+     * Highest change log id applied, and the ids applied within the overlap window below it.
+     */
+    private long changeCursor;
+    private final NavigableSet<Long> appliedChanges = new TreeSet<>();
+
+    @PostConstruct
+    void loadPermissions() {
+        // Everything logged up to here is part of the initial load
+        changeCursor = changeRepository.findMaxId();
+        reloadPermissions();
+    }
+
+    /**
+     * Pick up role and permission changes logged by any node (or directly in the database) and reload only the
+     * affected roles. Cached principals holding those roles are evicted; every other principal is left alone.
+     */
+    @Scheduled(
+            initialDelayString = "${auth.permissions.change_poll_interval}",
+            fixedDelayString = "${auth.permissions.change_poll_interval}"
+    )
+    public synchronized void pollChanges() {
+        final long from = Math.max(0, changeCursor - CHANGE_CURSOR_OVERLAP);
+        final Set<String> roles = new HashSet<>();
+        List<PermissionChange> changes;
+        long after = from;
+
+        do {
+            changes = changeRepository.findAfter(after, CHANGE_BATCH_SIZE);
+            for (PermissionChange change : changes) {
+                after = change.getId();
+                if (appliedChanges.add(change.getId())) {
+                    roles.add(change.getRole());
+                }
+            }
+        } while (changes.size() == CHANGE_BATCH_SIZE);
+
+        changeCursor = Math.max(changeCursor, after);
+        appliedChanges.headSet(changeCursor - CHANGE_CURSOR_OVERLAP, true).clear();
+
+        if (roles.isEmpty()) {
+            return;
+        }
+
+        final RolePermissionSnapshot current = snapshot;
+        final RolePermissionSnapshot updated = current.withRoles(
+                roles,
+                roleRepository.findAllByNames(roles),
+                permissionRepository.findAllPermissions(),
+                rolePermissionRepository.findAllByRoles(roles)
+        );
+
+        if (current.getVersion().equals(updated.getVersion())) {
+            return;
+        }
+
+        snapshot = updated;
+        principalCache.evictRoles(roles);
+        LOG.info("Updated role permissions snapshot {} for roles {}.", updated.getVersion(), roles);
+    }
+
+    /**
+     * Remove change log rows that every node has long since applied.
+     */
+    @Scheduled(cron = "${auth.permissions.change_cleanup_cron}")
+    public void deleteOldChanges() {
+        final int deleted = changeRepository.deleteBefore(LocalDateTime.now().minusDays(1));
+        if (deleted > 0) {
+            LOG.info("Removed {} permission change log entries.", deleted);
+        }
+    }
+
+    /**
+     * Reload roles and permissions from the database. The current snapshot is only replaced when the data has
+     * changed. Changes are normally applied by {@link #pollChanges()}; this full reload is a safety net for edits
+     * made while the change log triggers were missing.
+     *
+     * @return The snapshot in effect after reloading
+     */
+    @Scheduled(
+            initialDelayString = "${auth.permissions.refresh_interval}",
+            fixedDelayString = "${auth.permissions.refresh_interval}"
+    )
+    public synchronized RolePermissionSnapshot reloadPermissions() {
+        final RolePermissionSnapshot current = snapshot;
+        final RolePermissionSnapshot loaded = RolePermissionSnapshot.of(
+                roleRepository.findAll(),
+                permissionRepository.findAllPermissions(),
+                rolePermissionRepository.findAll()
+        );
+
+        if (current != null && current.getVersion().equals(loaded.getVersion())) {
+            return current;
+        }
+
+        snapshot = loaded;
+        if (current != null) {
+            // cached principals carry authorities from the previous snapshot
+            principalCache.clear();
+        }
+        LOG.info("Loaded role permissions snapshot {} ({} roles).", loaded.getVersion(), loaded.getRoleCount());
+        return loaded;
+    }
+
+    public RolePermissionSnapshot getPermissionSnapshot() {
+        return snapshot;
+    }
+
     public List<UserPermission> getRolePermissions(UserRole role) {
-        return permissionRepository.findByRoleName(role.getName());
+        return snapshot.getPermissions(role.getName());
+    }
+
+    public List<GrantedAuthority> getRoleAuthorities(UserRole role) {
+        return snapshot.getAuthorities(role.getName());
     }
 }
@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2021 CGA Technologies, a trading name of Charlie Goldsmith Associates Ltd
+ *  All rights reserved, released under the BSD-3 licence.
+ *
+ * CGA Technologies develop and use this software as part of its work
+ *  but the software itself is open-source software; you can redistribute it and/or modify
+ *  it under the terms of the BSD licence below
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice, this
+ *     list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *  3. Neither the name of the copyright holder nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *  THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *  PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS
+ *  BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ *  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ *  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ *  LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ *  OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ *  DAMAGE.
+ *
+ * For more information please see http://opensource.org/licenses/BSD-3-Clause
+ */
+
+package org.cga.sctp.api.security;
+
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>Fixed-memory, approximate sliding window counter (a count-min sketch per time slot).</p>
+ * <p>The window is split into {@code slots} slots. Each slot holds {@code depth} rows of {@code width} counters and a
+ * key is counted in one counter per row. The estimate for a key is the minimum over the rows of its counts summed
+ * across the slots in the window. Hash collisions can only inflate an estimate, never lower it, so limits based on it
+ * err on the strict side. Memory use is {@code slots * depth * width} ints no matter how many distinct keys are seen.</p>
+ * <p>Each row hashes the key's UTF-8 bytes with MurmurHash3 and its own seed. The seeds are random per instance, so
+ * keys that collide cannot be chosen in advance, e.g. to lock out another user, and the rows collide independently.</p>
+ */
+public final class SlidingWindowSketch {
+    private static final int MAX_DEPTH = 8;
+
+    private final int[] seeds;
+
+    private final int depth;
+    private final int width;
+    private final int slots;
+    private final long slotMillis;
+    private final AtomicIntegerArray counters;
+    private final AtomicLongArray slotEpochs;
+
+    /**
+     * @param windowMillis Length of the sliding window
+     * @param slots        Number of slots the window is divided into (the window's granularity)
+     * @param depth        Number of hash rows (at most 8)
+     * @param width        Counters per row. Rounded up to a power of two
+     */
+    public SlidingWindowSketch(long windowMillis, int slots, int depth, int width) {
+        if (depth < 1 || depth > MAX_DEPTH) {
+            throw new IllegalArgumentException("depth must be between 1 and " + MAX_DEPTH);
+        }
+        if (slots < 1 || width < 1 || width > 1 << 24 || windowMillis < slots) {
+            throw new IllegalArgumentException("Invalid sketch dimensions");
+        }
+        this.depth = depth;
+        this.slots = slots;
+        this.width = width == 1 ? 1 : Integer.highestOneBit(width - 1) << 1;
+        this.slotMillis = windowMillis / slots;
+        this.counters = new AtomicIntegerArray(slots * depth * this.width);
+        this.slotEpochs = new AtomicLongArray(slots);
+        this.seeds = new int[depth];
+
+        final SecureRandom random = new SecureRandom();
+        for (int row = 0; row < depth; row++) {
+            seeds[row] = random.nextInt();
+        }
+    }
+
+    /**
+     * Count one occurrence of the key and return the estimated number of occurrences within the window,
+     * including this one.
+     *
+     * @param key Key to count
+     * @param now Current time in milliseconds
+     * @return .
+     */
+    public int increment(String key, long now) {
+        final long epoch = now / slotMillis;
+        final int slot = (int) (epoch % slots);
+        final int[] hashes = hash(key);
+
+        ensureCurrent(slot, epoch);
+        for (int row = 0; row < depth; row++) {
+            counters.incrementAndGet(index(slot, row, hashes[row]));
+        }
+        return estimate(hashes, epoch);
+    }
+
+    /**
+     * Estimate the number of occurrences of the key within the window.
+     *
+     * @param key Key to look up
+     * @param now Current time in milliseconds
+     * @return .
+     */
+    public int estimate(String key, long now) {
+        return estimate(hash(key), now / slotMillis);
+    }
+
+    private int estimate(int[] hashes, long epoch) {
+        int min = Integer.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            int sum = 0;
+            for (int slot = 0; slot < slots; slot++) {
+                final long slotEpoch = slotEpochs.get(slot);
+                if (slotEpoch > epoch - slots && slotEpoch <= epoch) {
+                    sum += counters.get(index(slot, row, hashes[row]));
+                }
+            }
+            min = Math.min(min, sum);
+        }
+        return min;
+    }
+
+    private void ensureCurrent(int slot, long epoch) {
+        if (slotEpochs.get(slot) == epoch) {
+            return;
+        }
+        synchronized (this) {
+            if (slotEpochs.get(slot) != epoch) {
+                final int start = slot * depth * width;
+                final int end = start + depth * width;
+                for (int i = start; i < end; i++) {
+                    counters.set(i, 0);
+                }
+                slotEpochs.set(slot, epoch);
+            }
+        }
+    }
+
+    private int index(int slot, int row, int hash) {
+        return (slot * depth + row) * width + (hash & (width - 1));
+    }
+
+    private int[] hash(String key) {
+        final byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        final int[] hashes = new int[depth];
+        for (int row = 0; row < depth; row++) {
+            hashes[row] = murmur3(bytes, seeds[row]);
+        }
+        return hashes;
+    }
+
+    /**
+     * MurmurHash3 x86 32-bit.
+     */
+    static int murmur3(byte[] data, int seed) {
+        final int c1 = 0xCC9E2D51;
+        final int c2 = 0x1B873593;
+        final int blocks = data.length & ~3;
+        int h = seed;
+
+        for (int i = 0; i < blocks; i += 4) {
+            int k = (data[i] & 0xFF) | (data[i + 1] & 0xFF) << 8 | (data[i + 2] & 0xFF) << 16 | data[i + 3] << 24;
+            k *= c1;
+            k = Integer.rotateLeft(k, 15);
+            k *= c2;
+            h ^= k;
+            h = Integer.rotateLeft(h, 13);
+            h = h * 5 + 0xE6546B64;
+        }
+
+        int k = 0;
+        switch (data.length & 3) {
+            case 3:
+                k ^= (data[blocks + 2] & 0xFF) << 16;
+            case 2:
+                k ^= (data[blocks + 1] & 0xFF) << 8;
+            case 1:
+                k ^= data[blocks] & 0xFF;
+                k *= c1;
+                k = Integer.rotateLeft(k, 15);
+                k *= c2;
+                h ^= k;
+        }
+
+        h ^= data.length;
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
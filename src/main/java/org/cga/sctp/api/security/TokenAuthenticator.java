@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2021 CGA Technologies, a trading name of Charlie Goldsmith Associates Ltd
+ *  All rights reserved, released under the BSD-3 licence.
+ *
+ * CGA Technologies develop and use this software as part of its work
+ *  but the software itself is open-source software; you can redistribute it and/or modify
+ *  it under the terms of the BSD licence below
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice, this
+ *     list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *  3. Neither the name of the copyright holder nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *  THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *  PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS
+ *  BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ *  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ *  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ *  LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ *  OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ *  DAMAGE.
+ *
+ * For more information please see http://opensource.org/licenses/BSD-3-Clause
+ */
+
+package org.cga.sctp.api.security;
+
+import org.cga.sctp.api.auth.AccessTokenClaims;
+import org.cga.sctp.api.core.BaseComponent;
+import org.cga.sctp.api.security.session.SessionRevocationRegistry;
+import org.cga.sctp.api.security.session.UserSessionRegistry;
+import org.cga.sctp.api.user.ApiUser;
+import org.cga.sctp.api.user.ApiUserService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Resolves access tokens to the authentication of their user, checking revocations, sessions and the user's status.
+ */
+@Component
+public class TokenAuthenticator extends BaseComponent {
+
+    @Autowired
+    private JwtUtil jwtUtil;
+
+    @Autowired
+    private ApiUserService userService;
+
+    @Autowired
+    private SecurityService securityService;
+
+    @Autowired
+    private PrincipalCache principalCache;
+
+    @Autowired
+    private SessionRevocationRegistry revocationRegistry;
+
+    @Autowired
+    private UserSessionRegistry sessionRegistry;
+
+    /**
+     * @param token Signed JWT token
+     * @return The authentication or null if the token is not valid
+     */
+    public ApiUserAuthentication authenticate(String token) {
+        final VerifiedToken jwt = jwtUtil.verify(token);
+        return jwt == null ? null : authenticate(jwt);
+    }
+
+    /**
+     * @param jwt Verified token
+     * @return The authentication or null if the token's session or user is no longer valid
+     */
+    public ApiUserAuthentication authenticate(VerifiedToken jwt) {
+        ApiUser apiUser;
+        AccessTokenClaims claims;
+        RolePermissionSnapshot snapshot;
+        ApiUserAuthentication authentication;
+
+        if (jwt.isExpired(System.currentTimeMillis())) {
+            return null;
+        }
+
+        if (revocationRegistry.isRevoked(jwt.getJti())) {
+            LOG.debug("Rejected revoked session {}.", jwt.getJti());
+            return null;
+        }
+
+        claims = jwt.getClaims();
+        if ((authentication = principalCache.get(claims.getUserName(), jwt.getJti())) != null) {
+            return authentication;
+        }
+
+        if (!sessionRegistry.isActive(jwt.getJti(), claims.getUserName())) {
+            LOG.warn("Invalid username and session pair for {}: Most likely a revoked session.", claims.getUserName());
+            return null;
+        }
+
+        if ((apiUser = userService.findByUserName(claims.getUserName())) == null) {
+            return null;
+        }
+
+        if (!apiUser.isActive() || apiUser.isDeleted() || !apiUser.getRole().isActive()) {
+            return null;
+        }
+
+        // manually load permissions
+        snapshot = securityService.getPermissionSnapshot();
+        apiUser.setAuthorities(snapshot.getAuthorities(apiUser.getRole().getName()));
+        authentication = new ApiUserAuthentication(apiUser, snapshot);
+        principalCache.put(jwt.getJti(), authentication, jwt.getExpiresAt());
+
+        return authentication;
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2021 CGA Technologies, a trading name of Charlie Goldsmith Associates Ltd
+ *  All rights reserved, released under the BSD-3 licence.
+ *
+ * CGA Technologies develop and use this software as part of its work
+ *  but the software itself is open-source software; you can redistribute it and/or modify
+ *  it under the terms of the BSD licence below
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice, this
+ *     list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *  3. Neither the name of the copyright holder nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *  THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *  PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS
+ *  BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ *  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ *  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ *  LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ *  OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ *  DAMAGE.
+ *
+ * For more information please see http://opensource.org/licenses/BSD-3-Clause
+ */
+
+package org.cga.sctp.api.security;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import org.springframework.security.core.GrantedAuthority;
+
+import java.util.stream.Collectors;
+
+/**
+ * Token introspection response as described in RFC 7662. Inactive tokens only carry {@code active=false}.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public final class TokenIntrospectionResponse {
+    static final TokenIntrospectionResponse INACTIVE = new TokenIntrospectionResponse(false, null, null, null, null);
+
+    private final boolean active;
+    private final String sub;
+    private final String jti;
+    private final Long exp;
+    private final String scope;
+
+    private TokenIntrospectionResponse(boolean active, String sub, String jti, Long exp, String scope) {
+        this.active = active;
+        this.sub = sub;
+        this.jti = jti;
+        this.exp = exp;
+        this.scope = scope;
+    }
+
+    static TokenIntrospectionResponse of(VerifiedToken jwt, ApiUserAuthentication authentication) {
+        return new TokenIntrospectionResponse(
+                true,
+                authentication.getUser().getUserName(),
+                jwt.getJti(),
+                jwt.getExpiresAt() / 1000,
+                authentication.getAuthorities().stream()
+                        .map(GrantedAuthority::getAuthority)
+                        .collect(Collectors.joining(" "))
+        );
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    /**
+     * @return User name of the token's user
+     */
+    public String getSub() {
+        return sub;
+    }
+
+    public String getJti() {
+        return jti;
+    }
+
+    /**
+     * @return Expiry time in seconds since epoch
+     */
+    public Long getExp() {
+        return exp;
+    }
+
+    /**
+     * @return Space separated permissions of the token's user
+     */
+    public String getScope() {
+        return scope;
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2021 CGA Technologies, a trading name of Charlie Goldsmith Associates Ltd
+ *  All rights reserved, released under the BSD-3 licence.
+ *
+ * CGA Technologies develop and use this software as part of its work
+ *  but the software itself is open-source software; you can redistribute it and/or modify
+ *  it under the terms of the BSD licence below
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice, this
+ *     list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *  3. Neither the name of the copyright holder nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *  THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *  PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS
+ *  BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ *  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ *  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ *  LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ *  OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ *  DAMAGE.
+ *
+ * For more information please see http://opensource.org/licenses/BSD-3-Clause
+ */
+
+package org.cga.sctp.api.security;
+
+import org.cga.sctp.api.config.AuthConfiguration;
+import org.cga.sctp.api.core.BaseService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Introspection of access tokens on behalf of other services.</p>
+ * <p>Responses, including negative ones, are cached by token digest for {@code auth.introspection.ttl} seconds.
+ * A revocation may therefore take up to that long to be reported.</p>
+ */
+@Service
+public class TokenIntrospectionService extends BaseService {
+
+    @Autowired
+    private JwtUtil jwtUtil;
+
+    @Autowired
+    private TokenAuthenticator tokenAuthenticator;
+
+    private final int maxSize;
+    private final long ttlMillis;
+    private final ConcurrentHashMap<ByteBuffer, CachedResponse> responses;
+
+    @Autowired
+    public TokenIntrospectionService(AuthConfiguration configuration) {
+        this.maxSize = configuration.getIntrospection().getMaxSize();
+        this.ttlMillis = TimeUnit.SECONDS.toMillis(configuration.getIntrospection().getTtl());
+        this.responses = new ConcurrentHashMap<>();
+    }
+
+    public TokenIntrospectionResponse introspect(String token) {
+        final long now = System.currentTimeMillis();
+        final ByteBuffer key = ByteBuffer.wrap(sha256(token));
+        final CachedResponse cached = responses.get(key);
+
+        if (cached != null) {
+            if (cached.expiresAt > now) {
+                return cached.response;
+            }
+            responses.remove(key, cached);
+        }
+
+        final VerifiedToken jwt = jwtUtil.verify(token);
+        final ApiUserAuthentication authentication = jwt == null ? null : tokenAuthenticator.authenticate(jwt);
+        final TokenIntrospectionResponse response = authentication == null
+                ? TokenIntrospectionResponse.INACTIVE
+                : TokenIntrospectionResponse.of(jwt, authentication);
+
+        cache(key, response, authentication == null ? now + ttlMillis : Math.min(now + ttlMillis, jwt.getExpiresAt()), now);
+        return response;
+    }
+
+    private void cache(ByteBuffer key, TokenIntrospectionResponse response, long expiresAt, long now) {
+        if (ttlMillis <= 0) {
+            return;
+        }
+        if (responses.size() >= maxSize) {
+            responses.values().removeIf(cached -> cached.expiresAt <= now);
+            if (responses.size() >= maxSize) {
+                return;
+            }
+        }
+        responses.put(key, new CachedResponse(response, expiresAt));
+    }
+
+    public int size() {
+        return responses.size();
+    }
+
+    private static byte[] sha256(String value) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final class CachedResponse {
+        private final TokenIntrospectionResponse response;
+        private final long expiresAt;
+
+        CachedResponse(TokenIntrospectionResponse response, long expiresAt) {
+            this.response = response;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
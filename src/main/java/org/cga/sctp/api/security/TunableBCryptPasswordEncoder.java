@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2021 CGA Technologies, a trading name of Charlie Goldsmith Associates Ltd
+ *  All rights reserved, released under the BSD-3 licence.
+ *
+ * CGA Technologies develop and use this software as part of its work
+ *  but the software itself is open-source software; you can redistribute it and/or modify
+ *  it under the terms of the BSD licence below
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice, this
+ *     list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *  3. Neither the name of the copyright holder nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *  THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *  PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS
+ *  BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ *  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ *  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ *  LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ *  OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ *  DAMAGE.
+ *
+ * For more information please see http://opensource.org/licenses/BSD-3-Clause
+ */
+
+package org.cga.sctp.api.security;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.crypto.bcrypt.BCrypt;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * <p>Bcrypt encoder that asks for a hash to be upgraded whenever its cost differs from the configured cost, in either
+ * direction, so that lowering the cost takes effect as well as raising it.</p>
+ * <p>{@link #calibrate(long, int, int)} finds the cost that fits a verification time budget on this machine.</p>
+ */
+public class TunableBCryptPasswordEncoder extends BCryptPasswordEncoder {
+    private static final Logger LOG = LoggerFactory.getLogger(TunableBCryptPasswordEncoder.class);
+    private static final Pattern BCRYPT_PATTERN = Pattern.compile("^\\$2[aby]?\\$(\\d\\d)\\$[./0-9A-Za-z]{53}$");
+    private static final int SAMPLES = 3;
+
+    private final int cost;
+
+    public TunableBCryptPasswordEncoder(int cost) {
+        super(cost);
+        this.cost = cost;
+    }
+
+    public int getCost() {
+        return cost;
+    }
+
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        final Matcher matcher;
+        if (encodedPassword == null || !(matcher = BCRYPT_PATTERN.matcher(encodedPassword)).matches()) {
+            return false;
+        }
+        return Integer.parseInt(matcher.group(1)) != cost;
+    }
+
+    /**
+     * Find the highest cost whose verification time does not exceed the target. Every extra cost unit doubles the
+     * time, so only the minimum cost is measured (best of a few runs, after a warm-up) and the rest is extrapolated.
+     *
+     * @param targetMillis Target verification time in milliseconds
+     * @param minCost      Lowest acceptable cost, returned even if it exceeds the target
+     * @param maxCost      Highest acceptable cost
+     * @return Cost factor
+     */
+    public static int calibrate(long targetMillis, int minCost, int maxCost) {
+        final String hash = BCrypt.hashpw("calibration", BCrypt.gensalt(minCost));
+        long best = Long.MAX_VALUE;
+        int cost = minCost;
+
+        for (int i = 0; i < SAMPLES; i++) {
+            final long start = System.nanoTime();
+            BCrypt.checkpw("calibration", hash);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+
+        final long target = TimeUnit.MILLISECONDS.toNanos(targetMillis);
+        for (long time = best * 2; cost < maxCost && time <= target; time *= 2) {
+            cost++;
+        }
+
+        LOG.info("Calibrated bcrypt cost {} (estimated {} ms, target {} ms).",
+                cost, TimeUnit.NANOSECONDS.toMillis(best << (cost - minCost)), targetMillis);
+        return cost;
+    }
+}
@@ -45,4 +45,7 @@ public interface UserPermissionRepository extends CrudRepository<UserPermission,
 
     @Query(nativeQuery = true, value = "CALL getRolePermissions(:role)")
     List<UserPermission> findByRoleName(@Param("role") String roleName);
+
+    @Query(nativeQuery = true, value = "SELECT * FROM permissions")
+    List<UserPermission> findAllPermissions();
 }
@@ -40,4 +40,8 @@ package org.cga.sctp.api.security.access_control;
  */
 public interface UserPermissions {
     String READ_LOCATIONS = "READ_LOCATIONS";
+    String MANAGE_API_KEYS = "MANAGE_API_KEYS";
+    String MANAGE_SESSIONS = "MANAGE_SESSIONS";
+    String INTROSPECT_TOKENS = "INTROSPECT_TOKENS";
+    String VIEW_AUDIT_LOGS = "VIEW_AUDIT_LOGS";
 }
@@ -35,7 +35,15 @@
 
 package org.cga.sctp.api.security.access_control;
 
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.PagingAndSortingRepository;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+import java.util.List;
 
 public interface UserRolePermissionRepository extends PagingAndSortingRepository<UserRolePermission, Long> {
+
+    @Query(value = "SELECT * FROM role_permissions WHERE role IN (:roles)", nativeQuery = true)
+    List<UserRolePermission> findAllByRoles(@Param("roles") Collection<String> roles);
 }
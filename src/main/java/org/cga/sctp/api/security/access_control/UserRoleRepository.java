@@ -36,6 +36,14 @@
 package org.cga.sctp.api.security.access_control;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+import java.util.List;
 
 public interface UserRoleRepository extends JpaRepository<UserRole, Long> {
+
+    @Query(value = "SELECT * FROM roles WHERE name IN (:names)", nativeQuery = true)
+    List<UserRole> findAllByNames(@Param("names") Collection<String> names);
 }
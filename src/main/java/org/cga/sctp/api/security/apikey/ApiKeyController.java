@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2021 CGA Technologies, a trading name of Charlie Goldsmith Associates Ltd
+ *  All rights reserved, released under the BSD-3 licence.
+ *
+ * CGA Technologies develop and use this software as part of its work
+ *  but the software itself is open-source software; you can redistribute it and/or modify
+ *  it under the terms of the BSD licence below
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice, this
+ *     list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *  3. Neither the name of the copyright holder nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *  THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *  PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS
+ *  BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ *  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ *  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ *  LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ *  OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ *  DAMAGE.
+ *
+ * For more information please see http://opensource.org/licenses/BSD-3-Clause
+ */
+
+package org.cga.sctp.api.security.apikey;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.cga.sctp.api.core.IncludeGeneralResponses;
+import org.cga.sctp.api.core.RequiresPermission;
+import org.cga.sctp.api.core.SecuredController;
+import org.cga.sctp.api.security.access_control.UserPermissions;
+import org.cga.sctp.api.user.ApiUser;
+import org.cga.sctp.api.user.ApiUserService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import javax.validation.Valid;
+import java.util.List;
+
+@RestController
+@RequestMapping("/security/api-keys")
+@Tag(name = "API Keys", description = "Endpoint for managing API keys of machine clients.")
+public class ApiKeyController extends SecuredController {
+
+    @Autowired
+    private ApiKeyRegistry apiKeyRegistry;
+
+    @Autowired
+    private ApiUserService userService;
+
+    @GetMapping
+    @Operation(description = "Return a list of all API keys.")
+    @IncludeGeneralResponses
+    @RequiresPermission(UserPermissions.MANAGE_API_KEYS)
+    public List<ApiKey> getApiKeys() {
+        return apiKeyRegistry.getApiKeys();
+    }
+
+    @PostMapping
+    @Operation(description = "Create an API key acting on behalf of a user. The key is only returned once.")
+    @ApiResponses({
+            @ApiResponse(responseCode = "403", description = "User is a system administrator and administrators cannot use the API.", content = @Content),
+            @ApiResponse(responseCode = "404", description = "User does not exist.", content = @Content),
+            @ApiResponse(responseCode = "503", description = "API keys are disabled on this node.", content = @Content)
+    })
+    @IncludeGeneralResponses
+    @RequiresPermission(UserPermissions.MANAGE_API_KEYS)
+    public ResponseEntity<CreateApiKeyResponse> createApiKey(@Valid @RequestBody CreateApiKeyRequest request) {
+        final ApiUser user;
+
+        if (!apiKeyRegistry.isEnabled()) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+
+        if ((user = userService.findByUserName(request.getUserName())) == null) {
+            return ResponseEntity.notFound().build();
+        }
+
+        if (!apiKeyRegistry.canUseApiKey(user)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+
+        return ResponseEntity.ok(apiKeyRegistry.create(request.getName(), user, request.getExpiresAt()));
+    }
+
+    @DeleteMapping("/{id}")
+    @Operation(description = "Revoke an API key.")
+    @ApiResponses({
+            @ApiResponse(responseCode = "404", description = "Key does not exist or is already revoked.", content = @Content)
+    })
+    @IncludeGeneralResponses
+    @RequiresPermission(UserPermissions.MANAGE_API_KEYS)
+    public ResponseEntity<Void> revokeApiKey(@PathVariable("id") Long id) {
+        return apiKeyRegistry.revoke(id) ? ResponseEntity.ok().build() : ResponseEntity.notFound().build();
+    }
+}
@@ -0,0 +1,301 @@
+/*
+ * Copyright (C) 2021 CGA Technologies, a trading name of Charlie Goldsmith Associates Ltd
+ *  All rights reserved, released under the BSD-3 licence.
+ *
+ * CGA Technologies develop and use this software as part of its work
+ *  but the software itself is open-source software; you can redistribute it and/or modify
+ *  it under the terms of the BSD licence below
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice, this
+ *     list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *  3. Neither the name of the copyright holder nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *  THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *  PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS
+ *  BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ *  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ *  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ *  LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ *  OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ *  DAMAGE.
+ *
+ * For more information please see http://opensource.org/licenses/BSD-3-Clause
+ */
+
+package org.cga.sctp.api.security.apikey;
+
+import org.cga.sctp.api.auth.AuthService;
+import org.cga.sctp.api.config.AuthConfiguration;
+import org.cga.sctp.api.core.BaseComponent;
+import org.cga.sctp.api.security.ApiUserAuthentication;
+import org.cga.sctp.api.security.RolePermissionSnapshot;
+import org.cga.sctp.api.security.SecurityService;
+import org.cga.sctp.api.security.access_control.UserRole;
+import org.cga.sctp.api.user.ApiUser;
+import org.cga.sctp.api.user.ApiUserService;
+import org.cga.sctp.api.utils.CryptoUtils;
+import org.cga.sctp.api.utils.LocaleUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * <p>In-memory index of active API keys.</p>
+ * <p>Keys are looked up by their HMAC-SHA256 digest (keyed with {@code auth.api_key.secret}), so authenticating a
+ * request costs one HMAC and a map lookup. The index is rebuilt from the {@code api_keys} table whenever a key is
+ * created or revoked on this node and every {@code auth.api_key.refresh_interval} to pick up changes made by other
+ * nodes.</p>
+ */
+@Component
+public class ApiKeyRegistry extends BaseComponent {
+
+    private static final String KEY_PREFIX = "sctp_";
+    private static final int SECRET_LENGTH = 43;
+    private static final int KEY_LENGTH = KEY_PREFIX.length() + SECRET_LENGTH;
+    private static final String ALGORITHM = "HmacSHA256";
+
+    @Autowired
+    private ApiKeyRepository repository;
+
+    @Autowired
+    private ApiUserService userService;
+
+    @Autowired
+    private SecurityService securityService;
+
+    @Autowired
+    private AuthConfiguration configuration;
+
+    @Autowired
+    private AuthService authService;
+
+    private ThreadLocal<Mac> macs;
+
+    private volatile Map<ByteBuffer, Entry> index = Map.of();
+
+    @PostConstruct
+    void initialize() {
+        final String secret = configuration.getApiKey().getSecret();
+        if (LocaleUtils.isStringNullOrEmpty(secret)) {
+            LOG.info("API keys are disabled. Set auth.api_key.secret to enable them.");
+            return;
+        }
+        if (secret.length() < 32) {
+            LOG.warn("auth.api_key.secret should be at least 32 characters long.");
+        }
+        final SecretKeySpec key = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), ALGORITHM);
+        macs = ThreadLocal.withInitial(() -> {
+            try {
+                final Mac mac = Mac.getInstance(ALGORITHM);
+                mac.init(key);
+                return mac;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        reload();
+    }
+
+    public boolean isEnabled() {
+        return macs != null;
+    }
+
+    /**
+     * Authenticate an API key
+     *
+     * @param key Key presented by the client
+     * @return Authentication for the key's user or null if the key is not valid
+     */
+    public ApiUserAuthentication authenticate(String key) {
+        final Entry entry;
+        if (!isEnabled() || key == null || key.length() != KEY_LENGTH || !key.startsWith(KEY_PREFIX)) {
+            return null;
+        }
+        if ((entry = index.get(ByteBuffer.wrap(digest(key)))) == null) {
+            return null;
+        }
+        if (entry.expiresAt <= System.currentTimeMillis() || !canUseApiKey(entry.user)) {
+            return null;
+        }
+        return entry.getAuthentication(securityService.getPermissionSnapshot());
+    }
+
+    /**
+     * Create a key for a user. The key itself is only returned from here.
+     *
+     * @param name      Description of the key's client
+     * @param user      User the key acts on behalf of
+     * @param expiresAt Expiry time or null for a key that has to be revoked explicitly
+     * @return The stored key together with the key to hand to the client
+     */
+    public CreateApiKeyResponse create(String name, ApiUser user, LocalDateTime expiresAt) {
+        final String key = KEY_PREFIX + CryptoUtils.genRandomString(SECRET_LENGTH);
+        final ApiKey apiKey = new ApiKey();
+
+        if (!isEnabled()) {
+            throw new IllegalStateException("API keys are disabled.");
+        }
+        if (!canUseApiKey(user)) {
+            throw new IllegalArgumentException(format("%s cannot use the API.", user.getUserName()));
+        }
+
+        apiKey.setName(name);
+        apiKey.setRevoked(false);
+        apiKey.setExpiresAt(expiresAt);
+        apiKey.setUserName(user.getUserName());
+        apiKey.setCreatedAt(LocalDateTime.now());
+        apiKey.setKeyDigest(toHex(digest(key)));
+
+        repository.save(apiKey);
+        reload();
+        return new CreateApiKeyResponse(apiKey, key);
+    }
+
+    /**
+     * @param id Key id
+     * @return true if the key was active and is now revoked
+     */
+    public boolean revoke(Long id) {
+        final boolean revoked = repository.revoke(id) > 0;
+        if (revoked) {
+            reload();
+        }
+        return revoked;
+    }
+
+    public List<ApiKey> getApiKeys() {
+        return repository.findAllKeys();
+    }
+
+    /**
+     * Rebuild the index from the database.
+     */
+    @Scheduled(
+            initialDelayString = "${auth.api_key.refresh_interval}",
+            fixedDelayString = "${auth.api_key.refresh_interval}"
+    )
+    public synchronized void reload() {
+        if (!isEnabled()) {
+            return;
+        }
+        final List<ApiKey> keys = repository.findActive(LocalDateTime.now());
+        final Map<ByteBuffer, Entry> entries = new HashMap<>(keys.size() * 2);
+
+        if (!keys.isEmpty()) {
+            final Map<String, ApiUser> users = userService
+                    .findAllByUserNames(keys.stream().map(ApiKey::getUserName).collect(Collectors.toSet()))
+                    .stream()
+                    .collect(Collectors.toMap(ApiUser::getUserName, Function.identity()));
+
+            for (ApiKey key : keys) {
+                final ApiUser user = users.get(key.getUserName());
+                if (user == null || user.isDeleted() || !user.isActive() || !canUseApiKey(user)) {
+                    continue;
+                }
+                entries.put(ByteBuffer.wrap(fromHex(key.getKeyDigest())), new Entry(user, key.getExpiresAt() == null
+                        ? Long.MAX_VALUE
+                        : key.getExpiresAt().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli()));
+            }
+        }
+
+        index = Collections.unmodifiableMap(entries);
+    }
+
+    /**
+     * Drop the keys of a user straight away, e.g. when the user is locked, rather than at the next reload.
+     *
+     * @param userName User name
+     */
+    public synchronized void evictUser(String userName) {
+        if (index.values().stream().noneMatch(entry -> entry.user.getUserName().equals(userName))) {
+            return;
+        }
+        final Map<ByteBuffer, Entry> entries = new HashMap<>(index);
+        entries.values().removeIf(entry -> entry.user.getUserName().equals(userName));
+        index = Collections.unmodifiableMap(entries);
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    /**
+     * System administrators may only hold API keys when they may sign in to the API, the same as with a password or
+     * refresh token.
+     *
+     * @param user User
+     * @return false if keys must not be issued to or accepted for the user
+     */
+    public boolean canUseApiKey(ApiUser user) {
+        return !authService.isSystemAdministratorRole(user.getRole()) || authService.canSystemAdminUseAPI();
+    }
+
+    private byte[] digest(String key) {
+        return macs.get().doFinal(key.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static String toHex(byte[] bytes) {
+        final StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    private static byte[] fromHex(String hex) {
+        final byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(hex, i * 2, i * 2 + 2, 16);
+        }
+        return bytes;
+    }
+
+    private static final class Entry {
+        private final ApiUser user;
+        private final long expiresAt;
+        private volatile ApiUserAuthentication authentication;
+
+        Entry(ApiUser user, long expiresAt) {
+            this.user = user;
+            this.expiresAt = expiresAt;
+        }
+
+        /**
+         * The authentication is resolved once per permission snapshot.
+         */
+        ApiUserAuthentication getAuthentication(RolePermissionSnapshot snapshot) {
+            ApiUserAuthentication current = authentication;
+            if (current == null || current.getSnapshot() != snapshot) {
+                final UserRole role = snapshot.getRole(user.getRole().getName());
+                if (role == null || !role.isActive()) {
+                    return null;
+                }
+                authentication = current = new ApiUserAuthentication(user, snapshot);
+            }
+            return current;
+        }
+    }
+}
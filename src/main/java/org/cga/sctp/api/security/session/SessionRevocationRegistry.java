@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2021 CGA Technologies, a trading name of Charlie Goldsmith Associates Ltd
+ *  All rights reserved, released under the BSD-3 licence.
+ *
+ * CGA Technologies develop and use this software as part of its work
+ *  but the software itself is open-source software; you can redistribute it and/or modify
+ *  it under the terms of the BSD licence below
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice, this
+ *     list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *  3. Neither the name of the copyright holder nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *  THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *  PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS
+ *  BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ *  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ *  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ *  LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ *  OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ *  DAMAGE.
+ *
+ * For more information please see http://opensource.org/licenses/BSD-3-Clause
+ */
+
+package org.cga.sctp.api.security.session;
+
+import org.cga.sctp.api.config.JwtConfiguration;
+import org.cga.sctp.api.core.BaseComponent;
+import org.cga.sctp.api.utils.LocaleUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>In-memory set of revoked JWT ids, kept until the tokens would have expired anyway.</p>
+ * <p>Revocations are written to the {@code revoked_sessions} table and every node polls that table for rows added
+ * by other nodes, which lets tokens be authorised from memory without losing "new login invalidates the previous
+ * session" semantics across nodes.</p>
+ */
+@Component
+public class SessionRevocationRegistry extends BaseComponent {
+
+    /**
+     * Rows are inserted in short transactions that may commit out of id order. Every poll re-reads this many ids
+     * below the cursor so such rows are not skipped.
+     */
+    private static final int CURSOR_OVERLAP = 100;
+    private static final int BATCH_SIZE = 1000;
+
+    @Autowired
+    private RevokedSessionRepository repository;
+
+    @Autowired
+    private JwtConfiguration jwtConfiguration;
+
+    private final ConcurrentHashMap<String, Long> revoked = new ConcurrentHashMap<>();
+
+    private volatile long cursor;
+
+    @PostConstruct
+    void loadRevokedSessions() {
+        poll();
+    }
+
+    public boolean isRevoked(String jti) {
+        final Long expiresAt = revoked.get(jti);
+        return expiresAt != null && expiresAt > System.currentTimeMillis();
+    }
+
+    /**
+     * Revoke a session that was issued no later than now. The revocation is kept for the maximum lifespan of a token.
+     *
+     * @param jti      Token id to revoke
+     * @param userName Owner of the session
+     */
+    public void revoke(String jti, String userName) {
+        revoke(jti, userName, LocalDateTime.now().plusMinutes(jwtConfiguration.getExpiration()));
+    }
+
+    public void revoke(String jti, String userName, LocalDateTime expiresAt) {
+        if (LocaleUtils.isStringNullOrEmpty(jti)) {
+            return;
+        }
+        final RevokedSession session = new RevokedSession();
+        session.setJti(jti);
+        session.setUserName(userName);
+        session.setExpiresAt(expiresAt);
+        session.setRevokedAt(LocalDateTime.now());
+
+        revoked.put(jti, toEpochMillis(expiresAt));
+        repository.save(session);
+    }
+
+    /**
+     * Revoke sessions in bulk. Each revocation is kept until the session would have expired.
+     *
+     * @param sessions Sessions to revoke
+     */
+    public void revokeAll(List<UserSession> sessions) {
+        final LocalDateTime now = LocalDateTime.now();
+        final List<RevokedSession> rows = new ArrayList<>(sessions.size());
+
+        for (UserSession session : sessions) {
+            final RevokedSession row = new RevokedSession();
+            row.setRevokedAt(now);
+            row.setJti(session.getJti());
+            row.setUserName(session.getUserName());
+            row.setExpiresAt(session.getExpiresAt());
+            rows.add(row);
+
+            revoked.put(session.getJti(), toEpochMillis(session.getExpiresAt()));
+        }
+
+        repository.saveAll(rows);
+    }
+
+    /**
+     * Pick up sessions revoked by other nodes.
+     */
+    @Scheduled(
+            initialDelayString = "${auth.revocation.poll_interval}",
+            fixedDelayString = "${auth.revocation.poll_interval}"
+    )
+    public synchronized void poll() {
+        final LocalDateTime now = LocalDateTime.now();
+        long from = Math.max(0, cursor - CURSOR_OVERLAP);
+        List<RevokedSession> sessions;
+
+        do {
+            sessions = repository.findActiveAfter(from, now, BATCH_SIZE);
+            for (RevokedSession session : sessions) {
+                revoked.put(session.getJti(), toEpochMillis(session.getExpiresAt()));
+                from = session.getId();
+            }
+        } while (sessions.size() == BATCH_SIZE);
+
+        cursor = Math.max(cursor, from);
+        purge();
+    }
+
+    /**
+     * Remove revocations for tokens that have expired, both locally and in the database.
+     */
+    @Scheduled(cron = "${auth.revocation.cleanup_cron}")
+    public void deleteExpired() {
+        final int count = repository.deleteExpired(LocalDateTime.now());
+        if (count > 0) {
+            LOG.debug("Removed {} expired session revocations.", count);
+        }
+    }
+
+    private void purge() {
+        final long now = System.currentTimeMillis();
+        revoked.values().removeIf(expiresAt -> expiresAt <= now);
+    }
+
+    private static long toEpochMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    public int size() {
+        return revoked.size();
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2021 CGA Technologies, a trading name of Charlie Goldsmith Associates Ltd
+ *  All rights reserved, released under the BSD-3 licence.
+ *
+ * CGA Technologies develop and use this software as part of its work
+ *  but the software itself is open-source software; you can redistribute it and/or modify
+ *  it under the terms of the BSD licence below
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice, this
+ *     list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *  3. Neither the name of the copyright holder nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *  THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *  PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS
+ *  BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ *  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ *  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ *  LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ *  OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ *  DAMAGE.
+ *
+ * For more information please see http://opensource.org/licenses/BSD-3-Clause
+ */
+
+package org.cga.sctp.api.security.session;
+
+import org.cga.sctp.api.config.AuthConfiguration;
+import org.cga.sctp.api.core.BaseComponent;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * <p>Registry of signed-in devices, backed by the {@code user_sessions} table.</p>
+ * <p>Sessions are indexed in memory by JWT id. Sessions created on other nodes are loaded on first use; revocations
+ * reach other nodes through {@link SessionRevocationRegistry}, which is checked before this registry.</p>
+ */
+@Component
+public class UserSessionRegistry extends BaseComponent {
+
+    private static final int DEVICE_LENGTH = 100;
+
+    @Autowired
+    private UserSessionRepository repository;
+
+    @Autowired
+    private SessionRevocationRegistry revocationRegistry;
+
+    @Autowired
+    private AuthConfiguration configuration;
+
+    private final ConcurrentHashMap<String, Session> sessions = new ConcurrentHashMap<>();
+
+    /**
+     * Register a new session. When the user exceeds {@code auth.sessions.max_per_user} the oldest sessions are
+     * revoked.
+     *
+     * @param userName        User name
+     * @param jti             JWT id of the session's access token
+     * @param expiresAt       Expiry time of the access token
+     * @param device          Client description, e.g. the User-Agent header
+     * @param refreshSelector Selector of the refresh token issued with the session, if any
+     */
+    public void create(String userName, String jti, LocalDateTime expiresAt, String device, String refreshSelector) {
+        final UserSession session = new UserSession();
+        final List<UserSession> active;
+        final int maxPerUser = configuration.getSessions().getMaxPerUser();
+
+        session.setJti(jti);
+        session.setRevoked(false);
+        session.setUserName(userName);
+        session.setExpiresAt(expiresAt);
+        session.setIssuedAt(LocalDateTime.now());
+        session.setRefreshSelector(refreshSelector);
+        session.setDevice(device == null || device.length() <= DEVICE_LENGTH ? device : device.substring(0, DEVICE_LENGTH));
+
+        repository.save(session);
+        sessions.put(jti, new Session(userName, toEpochMillis(expiresAt)));
+
+        if (maxPerUser > 0 && (active = repository.findActiveByUserName(userName, LocalDateTime.now())).size() > maxPerUser) {
+            revoke(active.subList(maxPerUser, active.size()));
+        }
+    }
+
+    /**
+     * Check whether the session exists and has neither been revoked nor expired.
+     *
+     * @param jti      JWT id
+     * @param userName User the token was issued to
+     * @return true if the session is active
+     */
+    public boolean isActive(String jti, String userName) {
+        final long now = System.currentTimeMillis();
+        Session session = sessions.get(jti);
+
+        if (session == null) {
+            final UserSession row = repository.findActiveByJti(jti, LocalDateTime.now());
+            if (row == null) {
+                return false;
+            }
+            sessions.put(jti, session = new Session(row.getUserName(), toEpochMillis(row.getExpiresAt())));
+        }
+
+        return session.expiresAt > now && session.userName.equals(userName);
+    }
+
+    /**
+     * Revoke the session that was issued together with the given refresh token.
+     *
+     * @param refreshSelector Refresh token selector
+     * @return Number of sessions revoked
+     */
+    public int revokeByRefreshSelector(String refreshSelector) {
+        return revoke(repository.findActiveByRefreshSelector(refreshSelector, LocalDateTime.now()));
+    }
+
+    /**
+     * Sign the user out on all devices.
+     *
+     * @param userName User name
+     * @return Number of sessions revoked
+     */
+    public int revokeByUser(String userName) {
+        return revoke(repository.findActiveByUserName(userName, LocalDateTime.now()));
+    }
+
+    /**
+     * Sign out all users with the given role.
+     *
+     * @param role Role name
+     * @return Number of sessions revoked
+     */
+    public int revokeByRole(String role) {
+        return revoke(repository.findActiveByRole(role, LocalDateTime.now()));
+    }
+
+    private int revoke(List<UserSession> list) {
+        if (list.isEmpty()) {
+            return 0;
+        }
+        repository.revokeByIds(list.stream().map(UserSession::getId).collect(Collectors.toList()));
+        revocationRegistry.revokeAll(list);
+        list.forEach(session -> sessions.remove(session.getJti()));
+        return list.size();
+    }
+
+    /**
+     * Remove expired sessions, both locally and in the database. Rows are deleted in batches of
+     * {@code auth.sessions.sweep_batch_size} so the sweep never holds locks on a large range.
+     */
+    @Scheduled(cron = "${auth.sessions.cleanup_cron}")
+    public void deleteExpired() {
+        final int batchSize = configuration.getSessions().getSweepBatchSize();
+        final LocalDateTime now = LocalDateTime.now();
+        final long nowMillis = System.currentTimeMillis();
+        int count, total = 0;
+
+        sessions.values().removeIf(session -> session.expiresAt <= nowMillis);
+
+        do {
+            total += count = repository.deleteExpired(now, batchSize);
+        } while (count == batchSize);
+
+        if (total > 0) {
+            LOG.debug("Removed {} expired user sessions.", total);
+        }
+    }
+
+    public int size() {
+        return sessions.size();
+    }
+
+    private static long toEpochMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private static final class Session {
+        private final String userName;
+        private final long expiresAt;
+
+        Session(String userName, long expiresAt) {
+            this.userName = userName;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
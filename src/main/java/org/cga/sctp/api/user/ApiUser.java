@@ -66,8 +66,11 @@ public class ApiUser extends DatabaseRecord implements UserDetails {
     @JsonIgnore
     private int authAttempts;
     /**
-     * This is used for tracking the JWT; in case it must be revoked.
+     * Id of the last session, from when a user could only be signed in on one device.
+     *
+     * @deprecated Sessions are tracked in {@code user_sessions}
      */
+    @Deprecated
     private String sessionId;
     private LocalDateTime lastAuthAttemptAt;
     private boolean systemUser;
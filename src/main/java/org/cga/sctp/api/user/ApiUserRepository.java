@@ -36,8 +36,14 @@
 package org.cga.sctp.api.user;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigInteger;
+import java.util.Collection;
+import java.util.List;
 
 public interface ApiUserRepository extends JpaRepository<ApiUser, Long> {
 
@@ -47,8 +53,26 @@ public interface ApiUserRepository extends JpaRepository<ApiUser, Long> {
     @Query(value = "select * FROM active_users WHERE user_name = :userName", nativeQuery = true)
     ApiUser findByUserName(@Param("userName") String userName);
 
-    @Query(value = "select * FROM active_users WHERE user_name = :userName AND session_id = :sessionId", nativeQuery = true)
-    ApiUser findByUserNameAndSessionId(@Param("userName") String userName, @Param("sessionId") String sessionId);
+    @Query(value = "select * FROM active_users WHERE user_name IN (:userNames)", nativeQuery = true)
+    List<ApiUser> findAllByUserNames(@Param("userNames") Collection<String> userNames);
+
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE users SET password = :password WHERE id = :id", nativeQuery = true)
+    void updatePassword(@Param("id") BigInteger id, @Param("password") String password);
+
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE users SET password = :password WHERE id = :id AND password = :expectedHash", nativeQuery = true)
+    int replacePassword(@Param("id") BigInteger id, @Param("expectedHash") String expectedHash, @Param("password") String password);
+
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE users SET auth_attempts = :authAttempts, status = :status, status_text = :statusText WHERE id = :id", nativeQuery = true)
+    void updateAuthenticationState(@Param("id") BigInteger id,
+                                   @Param("authAttempts") int authAttempts,
+                                   @Param("status") int status,
+                                   @Param("statusText") String statusText);
 
     @Query(value = "SELECT EXISTS(SELECT id FROM users WHERE email = :email LIMIT 1)", nativeQuery = true)
     boolean existsByEmail(@Param("email") String email);
@@ -41,12 +41,18 @@ import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
 
+import java.util.Collection;
+import java.util.List;
+
 @Service
 public class ApiUserService extends BaseService implements UserDetailsService {
 
     @Autowired
     private ApiUserRepository userRepository;
 
+    @Autowired
+    private LoginMetadataWriter loginMetadataWriter;
+
     @Override
     public ApiUser loadUserByUsername(String username) throws UsernameNotFoundException {
         final ApiUser apiUser = findByUserName(username);
@@ -60,12 +66,59 @@ public class ApiUserService extends BaseService implements UserDetailsService {
         userRepository.save(apiUser);
     }
 
+    /**
+     * Write the security relevant authentication state of the user (failed attempts and lock status).
+     *
+     * @param apiUser User
+     */
+    public void saveAuthenticationState(ApiUser apiUser) {
+        userRepository.updateAuthenticationState(
+                apiUser.getId(),
+                apiUser.getAuthAttempts(),
+                apiUser.getStatus().code,
+                apiUser.getStatusText()
+        );
+    }
+
+    /**
+     * Queue the user's last authentication attempt time and IP address for writing.
+     *
+     * @param apiUser User
+     * @see LoginMetadataWriter
+     */
+    public void recordAuthenticationAttempt(ApiUser apiUser) {
+        loginMetadataWriter.enqueue(apiUser);
+    }
+
+    /**
+     * Replace only the password hash of the user.
+     *
+     * @param apiUser  User
+     * @param password New password hash
+     */
+    public void updatePassword(ApiUser apiUser, String password) {
+        userRepository.updatePassword(apiUser.getId(), password);
+        apiUser.setPassword(password);
+    }
+
+    /**
+     * Replace the password hash of the user, unless it has changed since it was read.
+     *
+     * @param apiUser      User
+     * @param expectedHash Hash the user currently has
+     * @param password     New password hash
+     * @return false if the stored hash is no longer {@code expectedHash} and was left as it is
+     */
+    public boolean replacePassword(ApiUser apiUser, String expectedHash, String password) {
+        return userRepository.replacePassword(apiUser.getId(), expectedHash, password) > 0;
+    }
+
     public ApiUser findByUserName(String userName) {
         return userRepository.findByUserName(userName);
     }
 
-    public ApiUser findByUserNameAndSessionId(String userName, String sessionId) {
-        return userRepository.findByUserNameAndSessionId(userName, sessionId);
+    public List<ApiUser> findAllByUserNames(Collection<String> userNames) {
+        return userRepository.findAllByUserNames(userNames);
     }
 
     public boolean emailExists(String email) {
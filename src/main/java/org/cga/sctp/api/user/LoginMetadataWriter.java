@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2021 CGA Technologies, a trading name of Charlie Goldsmith Associates Ltd
+ *  All rights reserved, released under the BSD-3 licence.
+ *
+ * CGA Technologies develop and use this software as part of its work
+ *  but the software itself is open-source software; you can redistribute it and/or modify
+ *  it under the terms of the BSD licence below
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice, this
+ *     list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *  3. Neither the name of the copyright holder nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *  THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *  PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS
+ *  BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ *  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ *  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ *  LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ *  OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ *  DAMAGE.
+ *
+ * For more information please see http://opensource.org/licenses/BSD-3-Clause
+ */
+
+package org.cga.sctp.api.user;
+
+import org.cga.sctp.api.core.BaseComponent;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.math.BigInteger;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>Write-behind buffer for informational login metadata (last authentication attempt time and IP address).</p>
+ * <p>Updates are coalesced per user, so the buffer never holds more than one entry per user, and are written as a
+ * single JDBC batch every {@code auth.login_metadata.flush_interval} milliseconds. Losing a buffered update (e.g. on a
+ * crash) only loses the informational values; security relevant state is written synchronously by
+ * {@link ApiUserService#saveAuthenticationState(ApiUser)}.</p>
+ */
+@Component
+public class LoginMetadataWriter extends BaseComponent {
+
+    private static final String UPDATE_SQL = "UPDATE users SET last_auth_attempt_at = ?, ip_address = ? WHERE id = ?";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final ConcurrentHashMap<BigInteger, LoginMetadata> pending = new ConcurrentHashMap<>();
+
+    public void enqueue(ApiUser apiUser) {
+        pending.merge(
+                apiUser.getId(),
+                new LoginMetadata(apiUser.getLastAuthAttemptAt(), apiUser.getIpAddress()),
+                (current, update) -> update.time.isBefore(current.time) ? current : update
+        );
+    }
+
+    @Scheduled(fixedDelayString = "${auth.login_metadata.flush_interval}")
+    @PreDestroy
+    public synchronized void flush() {
+        final List<Object[]> batch = new ArrayList<>(pending.size());
+        final Iterator<Map.Entry<BigInteger, LoginMetadata>> iterator = pending.entrySet().iterator();
+
+        while (iterator.hasNext()) {
+            final Map.Entry<BigInteger, LoginMetadata> entry = iterator.next();
+            final LoginMetadata metadata = entry.getValue();
+            // Only remove the value that is written; a newer one enqueued meanwhile stays for the next flush
+            if (pending.remove(entry.getKey(), metadata)) {
+                batch.add(new Object[]{Timestamp.valueOf(metadata.time), metadata.ipAddress, entry.getKey()});
+            }
+        }
+
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        try {
+            jdbcTemplate.batchUpdate(UPDATE_SQL, batch);
+            LOG.debug("Flushed login metadata for {} users.", batch.size());
+        } catch (RuntimeException e) {
+            LOG.warn("Failed to write login metadata for {} users.", batch.size(), e);
+        }
+    }
+
+    private static final class LoginMetadata {
+        private final LocalDateTime time;
+        private final String ipAddress;
+
+        private LoginMetadata(LocalDateTime time, String ipAddress) {
+            this.time = time;
+            this.ipAddress = ipAddress;
+        }
+    }
+}
@@ -35,31 +35,92 @@
 
 package org.cga.sctp.api.utils;
 
+import java.security.DrbgParameters;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 
+/**
+ * <p>Random token generation.</p>
+ * <p>Every thread gets its own DRBG instance, seeded once from the platform's non-blocking entropy source, so
+ * generation never blocks or contends on a shared lock. The alphabet has exactly 64 characters, so every 6 random bits
+ * map to a character without rejection or bias.</p>
+ */
 public final class CryptoUtils {
     private static final char[] TABLE = "0123456789ABCDEFGHIJKLMNOPQRSTUVXYZabcdefghijklmnopqrstuvwxyz-._".toCharArray();
 
-    public static String genRandomString(int length) {
-        StringBuilder sb = new StringBuilder();
-        final byte[] buf = new byte[16];
+    private static final ThreadLocal<SecureRandom> RANDOM = ThreadLocal.withInitial(CryptoUtils::newSecureRandom);
+
+    static {
+        if (TABLE.length != 64) {
+            throw new ExceptionInInitializerError("Random string alphabet must have 64 characters.");
+        }
+    }
+
+    private static SecureRandom newSecureRandom() {
         try {
-            while (length > 0) {
-                SecureRandom.getInstanceStrong().nextBytes(buf);
-                for (int b : buf) {
-                    if (length <= 0) {
-                        break;
-                    }
-                    b &= 0x000000FF;
-                    if (b < TABLE.length) {
-                        sb.append(TABLE[b]);
-                        length--;
-                    }
-                }
+            return SecureRandom.getInstance("DRBG",
+                    DrbgParameters.instantiation(256, DrbgParameters.Capability.RESEED_ONLY, null));
+        } catch (NoSuchAlgorithmException e) {
+            return new SecureRandom();
+        }
+    }
+
+    /**
+     * @return The calling thread's secure random generator
+     */
+    public static SecureRandom secureRandom() {
+        return RANDOM.get();
+    }
+
+    public static byte[] randomBytes(int count) {
+        final byte[] bytes = new byte[count];
+        RANDOM.get().nextBytes(bytes);
+        return bytes;
+    }
+
+    public static String genRandomString(int length) {
+        final char[] chars = new char[Math.max(0, length)];
+        fill(chars, 0, chars.length, randomBytes(bytesFor(chars.length)), 0);
+        return new String(chars);
+    }
+
+    /**
+     * Generate several random strings at once, e.g. for provisioning users in bulk.
+     *
+     * @param count  Number of strings
+     * @param length Length of each string
+     * @return .
+     */
+    public static String[] genRandomStrings(int count, int length) {
+        final String[] strings = new String[count];
+        final char[] chars = new char[length];
+        final int bytesPerString = bytesFor(length);
+        final byte[] bytes = randomBytes(bytesPerString * count);
+
+        for (int i = 0; i < count; i++) {
+            fill(chars, 0, length, bytes, i * bytesPerString);
+            strings[i] = new String(chars);
+        }
+        return strings;
+    }
+
+    private static int bytesFor(int chars) {
+        return (chars * 6 + 7) / 8;
+    }
+
+    /**
+     * Map random bytes to characters, 6 bits per character (4 characters for every 3 bytes).
+     */
+    private static void fill(char[] chars, int from, int to, byte[] bytes, int offset) {
+        int bits = 0;
+        int available = 0;
+        for (int i = from; i < to; i++) {
+            if (available < 6) {
+                bits = (bits << 8) | (bytes[offset++] & 0xFF);
+                available += 8;
             }
-        } catch (NoSuchAlgorithmException ignore) {
+            available -= 6;
+            chars[i] = TABLE[(bits >>> available) & 0x3F];
         }
-        return sb.toString();
     }
 }
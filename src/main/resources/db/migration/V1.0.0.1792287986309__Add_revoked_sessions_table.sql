@@ -0,0 +1,9 @@
+CREATE TABLE IF NOT EXISTS `revoked_sessions` (
+  `id` bigint PRIMARY KEY AUTO_INCREMENT,
+  `jti` varchar(64) NOT NULL COMMENT 'Revoked JWT id',
+  `user_name` varchar(20) NOT NULL,
+  `revoked_at` timestamp NOT NULL,
+  `expires_at` timestamp NOT NULL COMMENT 'Row can be removed after this time; the token is no longer valid anyway',
+
+  INDEX `idx_revoked_sessions_expires_at` (`expires_at`)
+);
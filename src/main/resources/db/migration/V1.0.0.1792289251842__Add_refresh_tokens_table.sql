@@ -0,0 +1,13 @@
+CREATE TABLE IF NOT EXISTS `refresh_tokens` (
+  `id` bigint PRIMARY KEY AUTO_INCREMENT,
+  `selector` char(24) UNIQUE NOT NULL COMMENT 'Lookup part of the token',
+  `token_hash` char(64) NOT NULL COMMENT 'Hex encoded SHA-256 digest of the secret part of the token',
+  `user_name` varchar(20) NOT NULL,
+  `created_at` timestamp NOT NULL,
+  `expires_at` timestamp NOT NULL,
+  `used_at` timestamp NULL COMMENT 'Set when the token is exchanged. Tokens are single use',
+  `revoked` boolean NOT NULL,
+
+  INDEX `idx_refresh_tokens_user_name` (`user_name`),
+  INDEX `idx_refresh_tokens_expires_at` (`expires_at`)
+);
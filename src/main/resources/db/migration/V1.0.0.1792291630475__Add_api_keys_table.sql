@@ -0,0 +1,22 @@
+CREATE TABLE IF NOT EXISTS `api_keys` (
+  `id` bigint PRIMARY KEY AUTO_INCREMENT,
+  `name` varchar(50) NOT NULL COMMENT 'Client the key was issued to',
+  `key_digest` char(64) UNIQUE NOT NULL COMMENT 'Hex encoded HMAC-SHA256 digest of the key',
+  `user_name` varchar(20) NOT NULL COMMENT 'User the key acts on behalf of',
+  `created_at` timestamp NOT NULL,
+  `expires_at` timestamp NULL COMMENT 'Keys without expiry must be revoked explicitly',
+  `revoked` boolean NOT NULL,
+
+  INDEX `idx_api_keys_user_name` (`user_name`)
+);
+
+INSERT IGNORE INTO `permissions` (name, description, `group`, active, system_permission)
+VALUES
+    ('MANAGE_API_KEYS', 'Create and revoke API keys', 'user_management', true, false)
+;
+
+INSERT INTO `role_permissions` (`role`, `permission`)
+SELECT 'ROLE_SYSTEM_ADMIN', 'MANAGE_API_KEYS'
+WHERE NOT EXISTS (
+    SELECT id FROM `role_permissions` WHERE `role` = 'ROLE_SYSTEM_ADMIN' AND `permission` = 'MANAGE_API_KEYS'
+);
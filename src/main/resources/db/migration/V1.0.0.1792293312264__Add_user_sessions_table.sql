@@ -0,0 +1,31 @@
+CREATE TABLE IF NOT EXISTS `user_sessions` (
+  `id` bigint PRIMARY KEY AUTO_INCREMENT,
+  `jti` varchar(64) UNIQUE NOT NULL COMMENT 'JWT id of the session access token',
+  `user_name` varchar(20) NOT NULL,
+  `device` varchar(100) NULL COMMENT 'Client description (User-Agent)',
+  `refresh_selector` char(24) NULL COMMENT 'Selector of the refresh token issued with the session',
+  `issued_at` timestamp NOT NULL,
+  `expires_at` timestamp NOT NULL,
+  `revoked` boolean NOT NULL,
+
+  INDEX `idx_user_sessions_user_name` (`user_name`),
+  INDEX `idx_user_sessions_refresh_selector` (`refresh_selector`),
+  INDEX `idx_user_sessions_expires_at` (`expires_at`)
+);
+
+-- Keep users signed in on upgrade. The tokens expire on their own; the rows are removed by the sweeper
+INSERT IGNORE INTO `user_sessions` (jti, user_name, device, issued_at, expires_at, revoked)
+SELECT session_id, user_name, NULL, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP + INTERVAL 1 DAY, false
+FROM users
+WHERE session_id IS NOT NULL AND session_id <> '';
+
+INSERT IGNORE INTO `permissions` (name, description, `group`, active, system_permission)
+VALUES
+    ('MANAGE_SESSIONS', 'Sign users out', 'user_management', true, false)
+;
+
+INSERT INTO `role_permissions` (`role`, `permission`)
+SELECT 'ROLE_SYSTEM_ADMIN', 'MANAGE_SESSIONS'
+WHERE NOT EXISTS (
+    SELECT id FROM `role_permissions` WHERE `role` = 'ROLE_SYSTEM_ADMIN' AND `permission` = 'MANAGE_SESSIONS'
+);
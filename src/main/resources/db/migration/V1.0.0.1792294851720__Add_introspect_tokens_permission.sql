@@ -0,0 +1,10 @@
+INSERT IGNORE INTO `permissions` (name, description, `group`, active, system_permission)
+VALUES
+    ('INTROSPECT_TOKENS', 'Validate access tokens on behalf of other services', 'user_management', true, false)
+;
+
+INSERT INTO `role_permissions` (`role`, `permission`)
+SELECT 'ROLE_SYSTEM_ADMIN', 'INTROSPECT_TOKENS'
+WHERE NOT EXISTS (
+    SELECT id FROM `role_permissions` WHERE `role` = 'ROLE_SYSTEM_ADMIN' AND `permission` = 'INTROSPECT_TOKENS'
+);
@@ -0,0 +1,39 @@
+CREATE TABLE IF NOT EXISTS `permission_changes` (
+  `id` bigint PRIMARY KEY AUTO_INCREMENT,
+  `role` varchar(30) NOT NULL COMMENT 'Role whose permissions or status changed',
+  `changed_at` timestamp NOT NULL,
+
+  INDEX `idx_permission_changes_changed_at` (`changed_at`)
+);
+
+-- Rows are written by triggers, in the same transaction as the edit
+
+DROP TRIGGER IF EXISTS `trg_roles_insert_change`;
+CREATE TRIGGER `trg_roles_insert_change` AFTER INSERT ON `roles` FOR EACH ROW
+    INSERT INTO `permission_changes` (`role`, `changed_at`) VALUES (NEW.name, CURRENT_TIMESTAMP);
+
+DROP TRIGGER IF EXISTS `trg_roles_update_change`;
+CREATE TRIGGER `trg_roles_update_change` AFTER UPDATE ON `roles` FOR EACH ROW
+    INSERT INTO `permission_changes` (`role`, `changed_at`) VALUES (OLD.name, CURRENT_TIMESTAMP), (NEW.name, CURRENT_TIMESTAMP);
+
+DROP TRIGGER IF EXISTS `trg_roles_delete_change`;
+CREATE TRIGGER `trg_roles_delete_change` AFTER DELETE ON `roles` FOR EACH ROW
+    INSERT INTO `permission_changes` (`role`, `changed_at`) VALUES (OLD.name, CURRENT_TIMESTAMP);
+
+DROP TRIGGER IF EXISTS `trg_role_permissions_insert_change`;
+CREATE TRIGGER `trg_role_permissions_insert_change` AFTER INSERT ON `role_permissions` FOR EACH ROW
+    INSERT INTO `permission_changes` (`role`, `changed_at`) VALUES (NEW.role, CURRENT_TIMESTAMP);
+
+DROP TRIGGER IF EXISTS `trg_role_permissions_update_change`;
+CREATE TRIGGER `trg_role_permissions_update_change` AFTER UPDATE ON `role_permissions` FOR EACH ROW
+    INSERT INTO `permission_changes` (`role`, `changed_at`) VALUES (OLD.role, CURRENT_TIMESTAMP), (NEW.role, CURRENT_TIMESTAMP);
+
+DROP TRIGGER IF EXISTS `trg_role_permissions_delete_change`;
+CREATE TRIGGER `trg_role_permissions_delete_change` AFTER DELETE ON `role_permissions` FOR EACH ROW
+    INSERT INTO `permission_changes` (`role`, `changed_at`) VALUES (OLD.role, CURRENT_TIMESTAMP);
+
+-- Deactivating (or renaming) a permission affects every role granted it
+DROP TRIGGER IF EXISTS `trg_permissions_update_change`;
+CREATE TRIGGER `trg_permissions_update_change` AFTER UPDATE ON `permissions` FOR EACH ROW
+    INSERT INTO `permission_changes` (`role`, `changed_at`)
+    SELECT DISTINCT rp.role, CURRENT_TIMESTAMP FROM `role_permissions` rp WHERE rp.permission IN (OLD.name, NEW.name);
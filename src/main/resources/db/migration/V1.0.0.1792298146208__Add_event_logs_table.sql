@@ -0,0 +1,9 @@
+CREATE TABLE IF NOT EXISTS `event_logs` (
+  `id` bigint PRIMARY KEY AUTO_INCREMENT,
+  `archived` boolean NOT NULL DEFAULT false,
+  `event_type` int NOT NULL COMMENT 'Ordinal of org.cga.sctp.api.audit.EventType',
+  `created_at` timestamp NOT NULL,
+  `log_data` json NULL,
+
+  INDEX `idx_event_logs_created_at` (`created_at`)
+);
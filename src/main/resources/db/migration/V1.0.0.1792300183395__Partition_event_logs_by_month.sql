@@ -0,0 +1,21 @@
+-- Every unique key of a partitioned table must include the partitioning column
+ALTER TABLE `event_logs` DROP PRIMARY KEY, ADD PRIMARY KEY (`id`, `created_at`);
+
+-- Monthly partitions named after the month they hold (p202610 holds rows before 2026-11-01). The first two are derived
+-- from the date the migration runs, so p_future starts out empty. Further partitions are split off p_future ahead of
+-- time by the audit archiver, which also archives and drops old partitions.
+-- Limitation: every row logged before the migration lands in the first partition, which is archived as one file once
+-- that month is past the retention period.
+SET @first_month = DATE_FORMAT(NOW(), '%Y-%m-01');
+SET @second_month = @first_month + INTERVAL 1 MONTH;
+SET @third_month = @first_month + INTERVAL 2 MONTH;
+SET @partition_sql = CONCAT(
+    'ALTER TABLE `event_logs` PARTITION BY RANGE (UNIX_TIMESTAMP(`created_at`)) (',
+    'PARTITION p', DATE_FORMAT(@first_month, '%Y%m'),
+    ' VALUES LESS THAN (UNIX_TIMESTAMP(''', DATE_FORMAT(@second_month, '%Y-%m-%d 00:00:00'), ''')), ',
+    'PARTITION p', DATE_FORMAT(@second_month, '%Y%m'),
+    ' VALUES LESS THAN (UNIX_TIMESTAMP(''', DATE_FORMAT(@third_month, '%Y-%m-%d 00:00:00'), ''')), ',
+    'PARTITION p_future VALUES LESS THAN MAXVALUE)');
+PREPARE partition_event_logs FROM @partition_sql;
+EXECUTE partition_event_logs;
+DEALLOCATE PREPARE partition_event_logs;
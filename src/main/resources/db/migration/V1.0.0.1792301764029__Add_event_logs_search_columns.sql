@@ -0,0 +1,24 @@
+-- Fields of log_data that audit searches filter on. JSON nulls and non-string values become NULL
+ALTER TABLE `event_logs`
+    ADD COLUMN `log_user` varchar(30) GENERATED ALWAYS AS (LEFT(JSON_UNQUOTE(
+        IF(JSON_TYPE(JSON_EXTRACT(`log_data`, '$.user')) = 'STRING', JSON_EXTRACT(`log_data`, '$.user'), NULL)), 30)) STORED,
+    ADD COLUMN `log_ip` varchar(45) GENERATED ALWAYS AS (LEFT(JSON_UNQUOTE(
+        IF(JSON_TYPE(JSON_EXTRACT(`log_data`, '$.ip')) = 'STRING', JSON_EXTRACT(`log_data`, '$.ip'), NULL)), 45)) STORED,
+    ADD COLUMN `log_reason` varchar(100) GENERATED ALWAYS AS (LEFT(JSON_UNQUOTE(
+        IF(JSON_TYPE(JSON_EXTRACT(`log_data`, '$.reason')) = 'STRING', JSON_EXTRACT(`log_data`, '$.reason'), NULL)), 100)) STORED,
+    -- Searches page through results newest first on (created_at, id)
+    ADD INDEX `idx_event_logs_type_created_at` (`event_type`, `created_at`, `id`),
+    ADD INDEX `idx_event_logs_user_created_at` (`log_user`, `created_at`, `id`),
+    ADD INDEX `idx_event_logs_ip_created_at` (`log_ip`, `created_at`, `id`),
+    ADD INDEX `idx_event_logs_reason_created_at` (`log_reason`, `created_at`, `id`);
+
+INSERT IGNORE INTO `permissions` (name, description, `group`, active, system_permission)
+VALUES
+    ('VIEW_AUDIT_LOGS', 'Search the audit log', 'user_management', true, false)
+;
+
+INSERT INTO `role_permissions` (`role`, `permission`)
+SELECT 'ROLE_SYSTEM_ADMIN', 'VIEW_AUDIT_LOGS'
+WHERE NOT EXISTS (
+    SELECT id FROM `role_permissions` WHERE `role` = 'ROLE_SYSTEM_ADMIN' AND `permission` = 'VIEW_AUDIT_LOGS'
+);
@@ -0,0 +1,241 @@
+/*
+ * Copyright (C) 2021 CGA Technologies, a trading name of Charlie Goldsmith Associates Ltd
+ *  All rights reserved, released under the BSD-3 licence.
+ *
+ * CGA Technologies develop and use this software as part of its work
+ *  but the software itself is open-source software; you can redistribute it and/or modify
+ *  it under the terms of the BSD licence below
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice, this
+ *     list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *  3. Neither the name of the copyright holder nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *  THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *  PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS
+ *  BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ *  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ *  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ *  LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ *  OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ *  DAMAGE.
+ *
+ * For more information please see http://opensource.org/licenses/BSD-3-Clause
+ */
+
+package org.cga.sctp.api.audit;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.cga.sctp.api.auth.AuthenticationEvent;
+import org.cga.sctp.api.config.AuditConfiguration;
+import org.cga.sctp.api.user.ApiUser;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class AuditAggregatorTest {
+
+    private static final String SUCCESS_REASON = AuthenticationEvent.ofSuccess(new ApiUser()).getReason();
+
+    private final List<AuditEventLog> written = new CopyOnWriteArrayList<>();
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+
+    @Test
+    void keepsFirstEventsAndCollapsesTheRest() {
+        final AuditConfiguration configuration = configuration(2);
+        final AuditAggregator aggregator = aggregator(configuration);
+        final AuthenticationEvent firstCollapsed = success("alice", "10.0.0.1");
+
+        assertFalse(aggregator.offer(success("alice", "10.0.0.1")));
+        assertFalse(aggregator.offer(success("alice", "10.0.0.1")));
+        assertTrue(aggregator.offer(firstCollapsed));
+        assertTrue(aggregator.offer(success("alice", "10.0.0.2")));
+        assertTrue(aggregator.offer(success("alice", "10.0.0.1")));
+        assertEquals(3, registry.counter("audit.aggregation.collapsed").count());
+        assertEquals(1, registry.get("audit.aggregation.windows").gauge().value());
+
+        // The window is still open
+        aggregator.flush();
+        assertTrue(written.isEmpty());
+
+        aggregator.flushAll();
+        assertEquals(1, written.size());
+        assertEquals(0, registry.get("audit.aggregation.windows").gauge().value());
+
+        final AuditEventLog log = written.get(0);
+        final JsonObject data = JsonParser.parseString(log.getLogData()).getAsJsonObject();
+        assertEquals(EventType.security, log.getEventType());
+        assertEquals(LocalDateTime.ofInstant(Instant.ofEpochMilli(firstCollapsed.getTimestamp()), ZoneId.systemDefault()),
+                log.getCreatedAt());
+        assertTrue(data.get("aggregate").getAsBoolean());
+        assertEquals("alice", data.get("user").getAsString());
+        assertEquals(SUCCESS_REASON, data.get("reason").getAsString());
+        assertEquals(3, data.get("count").getAsLong());
+        assertNotNull(data.get("first"));
+        assertNotNull(data.get("last"));
+        assertFalse(data.has("ip"));
+        assertEquals(JsonParser.parseString("[\"10.0.0.1\",\"10.0.0.2\"]"), data.get("ips"));
+        assertFalse(data.get("ips_truncated").getAsBoolean());
+    }
+
+    @Test
+    void countsEachUserInItsOwnWindow() {
+        final AuditAggregator aggregator = aggregator(configuration(1));
+
+        for (int i = 0; i < 4; i++) {
+            aggregator.offer(success("alice", "10.0.0.1"));
+        }
+        for (int i = 0; i < 3; i++) {
+            aggregator.offer(success("bob", "10.0.0.2"));
+        }
+        aggregator.flushAll();
+
+        assertEquals(2, written.size());
+        for (AuditEventLog log : written) {
+            final JsonObject data = JsonParser.parseString(log.getLogData()).getAsJsonObject();
+            if (data.get("user").getAsString().equals("alice")) {
+                assertEquals(3, data.get("count").getAsLong());
+                // A single address is written like on individual events
+                assertEquals("10.0.0.1", data.get("ip").getAsString());
+            } else {
+                assertEquals("bob", data.get("user").getAsString());
+                assertEquals(2, data.get("count").getAsLong());
+                assertEquals("10.0.0.2", data.get("ip").getAsString());
+            }
+        }
+    }
+
+    @Test
+    void neverCollapsesFailures() {
+        final AuditConfiguration configuration = configuration(1);
+        configuration.getAggregation().getPolicies().get(0).setReason(SUCCESS_REASON);
+        final AuditAggregator aggregator = aggregator(configuration);
+
+        for (int i = 0; i < 5; i++) {
+            assertFalse(aggregator.offer(AuthenticationEvent.ofFailure(user("alice", "10.0.0.1"), "Invalid password")));
+        }
+        assertEquals(0, registry.get("audit.aggregation.windows").gauge().value());
+
+        aggregator.flushAll();
+        assertTrue(written.isEmpty());
+    }
+
+    @Test
+    void disabledAggregationCollapsesNothing() {
+        final AuditConfiguration configuration = configuration(1);
+        configuration.getAggregation().setEnabled(false);
+        final AuditAggregator aggregator = aggregator(configuration);
+
+        for (int i = 0; i < 5; i++) {
+            assertFalse(aggregator.offer(success("alice", "10.0.0.1")));
+        }
+    }
+
+    @Test
+    void writesWindowsWhenTheyClose() throws InterruptedException {
+        final AuditConfiguration configuration = configuration(1);
+        configuration.getAggregation().setWindow(0);
+        final AuditAggregator aggregator = aggregator(configuration);
+
+        assertFalse(aggregator.offer(success("alice", "10.0.0.1")));
+        assertTrue(aggregator.offer(success("alice", "10.0.0.1")));
+        Thread.sleep(5);
+        aggregator.flush();
+        assertEquals(1, written.size());
+        assertEquals(1, JsonParser.parseString(written.get(0).getLogData()).getAsJsonObject().get("count").getAsLong());
+
+        // The next event starts a new window, and is kept again
+        assertFalse(aggregator.offer(success("alice", "10.0.0.1")));
+        Thread.sleep(5);
+        aggregator.flush();
+        // Windows without collapsed events are not written
+        assertEquals(1, written.size());
+    }
+
+    @Test
+    void writesEventsIndividuallyWhenWindowsRunOut() {
+        final AuditConfiguration configuration = configuration(1);
+        configuration.getAggregation().setMaxWindows(1);
+        final AuditAggregator aggregator = aggregator(configuration);
+
+        assertFalse(aggregator.offer(success("alice", "10.0.0.1")));
+        for (int i = 0; i < 3; i++) {
+            assertFalse(aggregator.offer(success("bob", "10.0.0.2")));
+        }
+        assertEquals(3, registry.counter("audit.aggregation.overflow").count());
+        // The open window keeps collapsing
+        assertTrue(aggregator.offer(success("alice", "10.0.0.1")));
+
+        aggregator.flushAll();
+        assertEquals(1, written.size());
+        assertEquals("alice", JsonParser.parseString(written.get(0).getLogData()).getAsJsonObject().get("user").getAsString());
+    }
+
+    @Test
+    void truncatesAddresses() {
+        final AuditConfiguration configuration = configuration(0);
+        configuration.getAggregation().setMaxAddresses(2);
+        final AuditAggregator aggregator = aggregator(configuration);
+
+        aggregator.offer(success("alice", "10.0.0.1"));
+        aggregator.offer(success("alice", "10.0.0.1"));
+        aggregator.offer(success("alice", "10.0.0.2"));
+        aggregator.offer(success("alice", "10.0.0.3"));
+        aggregator.offer(success("alice", null));
+        aggregator.flushAll();
+
+        final JsonObject data = JsonParser.parseString(written.get(0).getLogData()).getAsJsonObject();
+        assertEquals(5, data.get("count").getAsLong());
+        assertEquals(JsonParser.parseString("[\"10.0.0.1\",\"10.0.0.2\"]"), data.get("ips"));
+        assertTrue(data.get("ips_truncated").getAsBoolean());
+        assertFalse(data.has("ip"));
+    }
+
+    private AuditAggregator aggregator(AuditConfiguration configuration) {
+        final AuditLogWriter writer = mock(AuditLogWriter.class);
+        when(writer.enqueue(any())).thenAnswer(invocation -> written.add(invocation.getArgument(0)));
+        return new AuditAggregator(configuration, writer, registry);
+    }
+
+    private static AuditConfiguration configuration(int keepFirst) {
+        final AuditConfiguration configuration = new AuditConfiguration();
+        final AuditConfiguration.AggregationPolicy policy = new AuditConfiguration.AggregationPolicy();
+        policy.setEventType(EventType.security);
+        policy.setKeepFirst(keepFirst);
+        configuration.getAggregation().getPolicies().add(policy);
+        return configuration;
+    }
+
+    private static AuthenticationEvent success(String userName, String address) {
+        return AuthenticationEvent.ofSuccess(user(userName, address));
+    }
+
+    private static ApiUser user(String userName, String address) {
+        final ApiUser user = new ApiUser();
+        user.setUserName(userName);
+        user.setIpAddress(address);
+        return user;
+    }
+}
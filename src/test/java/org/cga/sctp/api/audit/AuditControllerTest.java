@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2021 CGA Technologies, a trading name of Charlie Goldsmith Associates Ltd
+ *  All rights reserved, released under the BSD-3 licence.
+ *
+ * CGA Technologies develop and use this software as part of its work
+ *  but the software itself is open-source software; you can redistribute it and/or modify
+ *  it under the terms of the BSD licence below
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice, this
+ *     list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *  3. Neither the name of the copyright holder nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *  THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *  PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS
+ *  BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ *  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ *  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ *  LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ *  OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ *  DAMAGE.
+ *
+ * For more information please see http://opensource.org/licenses/BSD-3-Clause
+ */
+
+package org.cga.sctp.api.audit;
+
+import org.cga.sctp.api.config.AuditConfiguration;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@ExtendWith(MockitoExtension.class)
+class AuditControllerTest {
+
+    @Mock
+    private AuditService auditService;
+
+    @Spy
+    private AuditConfiguration auditConfiguration = new AuditConfiguration();
+
+    @InjectMocks
+    private AuditController controller;
+
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        mockMvc = MockMvcBuilders.standaloneSetup(controller).build();
+    }
+
+    @Test
+    void exportsWithinASlot() throws Exception {
+        when(auditService.tryBeginExport()).thenReturn(true);
+        when(auditService.export(any(), any(), any())).thenAnswer(invocation -> {
+            invocation.<OutputStream>getArgument(2).write("{}\n".getBytes(StandardCharsets.UTF_8));
+            return 1L;
+        });
+
+        mockMvc.perform(asyncDispatch(export()))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_TYPE, "application/x-ndjson"))
+                .andExpect(content().string("{}\n"));
+        verify(auditService).endExport();
+    }
+
+    @Test
+    void rejectsExportsWhenAllSlotsAreTaken() throws Exception {
+        when(auditService.tryBeginExport()).thenReturn(false);
+
+        mockMvc.perform(asyncDispatch(export())).andExpect(status().isServiceUnavailable());
+        verify(auditService, never()).export(any(), any(), any());
+        verify(auditService, never()).endExport();
+    }
+
+    @Test
+    void freesTheSlotWhenTheExportFails() throws Exception {
+        when(auditService.tryBeginExport()).thenReturn(true);
+        when(auditService.export(any(), any(), any())).thenThrow(new IOException("Broken pipe"));
+
+        export();
+        verify(auditService, timeout(5000)).endExport();
+    }
+
+    @Test
+    void negotiatesGzip() {
+        assertTrue(AuditController.acceptsGzip("gzip"));
+        assertTrue(AuditController.acceptsGzip("deflate, GZIP;q=0.5"));
+        assertTrue(AuditController.acceptsGzip("br;q=1.0, *;q=0.1"));
+        assertFalse(AuditController.acceptsGzip(null));
+        assertFalse(AuditController.acceptsGzip(""));
+        assertFalse(AuditController.acceptsGzip("identity"));
+        assertFalse(AuditController.acceptsGzip("gzip;q=0"));
+        assertFalse(AuditController.acceptsGzip("gzip; q=0.000"));
+        assertFalse(AuditController.acceptsGzip("*, gzip;q=0"));
+        assertFalse(AuditController.acceptsGzip("*;q=0"));
+        assertFalse(AuditController.acceptsGzip("gzip;q=x"));
+    }
+
+    @Test
+    void doesNotCompressWhenGzipIsRefused() throws Exception {
+        when(auditService.tryBeginExport()).thenReturn(true);
+
+        mockMvc.perform(asyncDispatch(mockMvc.perform(get("/audit/events/export")
+                        .header(HttpHeaders.ACCEPT_ENCODING, "gzip;q=0, identity"))
+                        .andExpect(request().asyncStarted())
+                        .andReturn()))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING));
+    }
+
+    private MvcResult export() throws Exception {
+        return mockMvc.perform(get("/audit/events/export"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2021 CGA Technologies, a trading name of Charlie Goldsmith Associates Ltd
+ *  All rights reserved, released under the BSD-3 licence.
+ *
+ * CGA Technologies develop and use this software as part of its work
+ *  but the software itself is open-source software; you can redistribute it and/or modify
+ *  it under the terms of the BSD licence below
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice, this
+ *     list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *  3. Neither the name of the copyright holder nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *  THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *  PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS
+ *  BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ *  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ *  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ *  LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ *  OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ *  DAMAGE.
+ *
+ * For more information please see http://opensource.org/licenses/BSD-3-Clause
+ */
+
+package org.cga.sctp.api.audit;
+
+import com.google.gson.Gson;
+import com.vladmihalcea.hibernate.type.util.ObjectMapperWrapper;
+import org.cga.sctp.api.auth.AuthenticationEvent;
+import org.cga.sctp.api.config.AppConfiguration;
+import org.cga.sctp.api.core.persistence.StatusCode;
+import org.cga.sctp.api.security.access_control.UserRole;
+import org.cga.sctp.api.user.ApiUser;
+import org.cga.sctp.api.utils.DateUtils;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares writing audit log data straight to JSON against the previous path: a map (built directly, or by
+ * serializing and parsing the source with Gson) that the {@code json} column type then serialized again.
+ * <p>Run with {@code mvn test-compile} followed by running {@link #main(String[])} on the test classpath. The GC
+ * profiler reports allocations per event as {@code gc.alloc.rate.norm}.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AuditEventBenchmark {
+
+    private Gson gson;
+    private ApiUser user;
+    private AuditEvent sourceEvent;
+    private AuthenticationEvent authenticationEvent;
+
+    @Setup
+    public void setUp() {
+        final UserRole role = new UserRole();
+        role.setId(3L);
+        role.setName("ROLE_DATA_ENTRY");
+        role.setActive(true);
+        role.setDescription("Data entry clerk");
+        role.setCreatedAt(LocalDateTime.of(2021, 6, 1, 8, 30));
+
+        user = new ApiUser();
+        user.setUserName("jbanda");
+        user.setRole(role);
+        user.setIpAddress("10.12.0.54");
+        user.setStatus(StatusCode.ACTIVE);
+        user.setLastAuthAttemptAt(LocalDateTime.of(2026, 10, 18, 9, 15, 42));
+
+        gson = new AppConfiguration().gson();
+        sourceEvent = new AuditEvent(EventType.security, new LocationChange(42L, "MW-BT", "Blantyre", user.getUserName()));
+        authenticationEvent = AuthenticationEvent.ofFailure(user, "Inactive principal");
+    }
+
+    @Benchmark
+    public String sourceRoundTrip() {
+        @SuppressWarnings("unchecked") final Map<String, Object> data = gson.fromJson(gson.toJson(sourceEvent.getSource()), Map.class);
+        return ObjectMapperWrapper.INSTANCE.toString(data);
+    }
+
+    @Benchmark
+    public String sourceStreaming() {
+        return sourceEvent.getLogData(gson);
+    }
+
+    @Benchmark
+    public String authenticationMap() {
+        final Map<String, Object> data = new LinkedHashMap<>();
+        data.put("user", user.getUserName());
+        data.put("role", user.getRole());
+        data.put("ip", user.getIpAddress());
+        data.put("status", user.getStatus());
+        data.put("timestamp", DateUtils.formatDateAsIsoString(user.getLastAuthAttemptAt()));
+        data.put("reason", "Inactive principal");
+        return ObjectMapperWrapper.INSTANCE.toString(data);
+    }
+
+    @Benchmark
+    public String authenticationStreaming() {
+        return authenticationEvent.getLogData(gson);
+    }
+
+    public static final class LocationChange {
+        private final long id;
+        private final String code;
+        private final String name;
+        private final String changedBy;
+
+        LocationChange(long id, String code, String name, String changedBy) {
+            this.id = id;
+            this.code = code;
+            this.name = name;
+            this.changedBy = changedBy;
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(AuditEventBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2021 CGA Technologies, a trading name of Charlie Goldsmith Associates Ltd
+ *  All rights reserved, released under the BSD-3 licence.
+ *
+ * CGA Technologies develop and use this software as part of its work
+ *  but the software itself is open-source software; you can redistribute it and/or modify
+ *  it under the terms of the BSD licence below
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice, this
+ *     list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *  3. Neither the name of the copyright holder nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *  THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *  PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS
+ *  BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ *  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ *  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ *  LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ *  OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ *  DAMAGE.
+ *
+ * For more information please see http://opensource.org/licenses/BSD-3-Clause
+ */
+
+package org.cga.sctp.api.audit;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.cga.sctp.api.config.AuditConfiguration;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AuditLogWriterTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void keepsWritingAfterUnexpectedFailures() throws Exception {
+        final AuditConfiguration configuration = configuration(directory);
+        final RecordingJdbcTemplate jdbcTemplate = new RecordingJdbcTemplate();
+        final FailingSpool spool = new FailingSpool(configuration);
+        final AuditLogWriter writer = new AuditLogWriter(configuration, jdbcTemplate, spool, new SimpleMeterRegistry());
+
+        try {
+            for (int i = 0; i < 20; i++) {
+                assertTrue(writer.enqueue(log("event-" + i)));
+            }
+
+            awaitWritten(jdbcTemplate, 20);
+            // Failed to acknowledge, so deferred and written again
+            assertTrue(spool.acknowledgeFailures.get() > 0);
+
+            for (int i = 20; i < 30; i++) {
+                assertTrue(writer.enqueue(log("event-" + i)));
+            }
+            awaitWritten(jdbcTemplate, 30);
+        } finally {
+            writer.shutdown();
+            spool.close();
+        }
+    }
+
+    private static void awaitWritten(RecordingJdbcTemplate jdbcTemplate, int count) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (System.nanoTime() < deadline) {
+            boolean all = true;
+            for (int i = 0; i < count && all; i++) {
+                all = jdbcTemplate.written.contains("\"event-" + i + "\"");
+            }
+            if (all) {
+                return;
+            }
+            Thread.sleep(10);
+        }
+        fail("Events not written: " + jdbcTemplate.written);
+    }
+
+    static AuditConfiguration configuration(Path directory) {
+        final AuditConfiguration configuration = new AuditConfiguration();
+        configuration.getWriter().setBatchSize(5);
+        configuration.getWriter().setFlushInterval(10);
+        configuration.getSpool().setEnabled(true);
+        configuration.getSpool().setDirectory(directory.toString());
+        configuration.getSpool().setRetryInterval(20);
+        return configuration;
+    }
+
+    static AuditEventLog log(String data) {
+        final AuditEventLog log = new AuditEventLog();
+        log.setEventType(EventType.security);
+        log.setCreatedAt(LocalDateTime.now());
+        log.setLogData("\"" + data + "\"");
+        return log;
+    }
+
+    private static final class RecordingJdbcTemplate extends JdbcTemplate {
+        private final Set<Object> written = ConcurrentHashMap.newKeySet();
+        private final AtomicInteger calls = new AtomicInteger();
+
+        @Override
+        public int update(String sql, Object... args) {
+            if (calls.incrementAndGet() == 2) {
+                throw new IllegalStateException("Connection lost");
+            }
+            for (int i = 3; i < args.length; i += 4) {
+                written.add(args[i]);
+            }
+            return args.length / 4;
+        }
+    }
+
+    private static final class FailingSpool extends AuditSpool {
+        private final AtomicInteger forceFailures = new AtomicInteger();
+        private final AtomicInteger acknowledgeFailures = new AtomicInteger();
+
+        private FailingSpool(AuditConfiguration configuration) throws IOException {
+            super(configuration, new SimpleMeterRegistry());
+        }
+
+        @Override
+        public void force() {
+            if (forceFailures.incrementAndGet() <= 3) {
+                throw new UncheckedIOException(new IOException("Disk error"));
+            }
+            super.force();
+        }
+
+        @Override
+        public void acknowledge(Record record) {
+            if (acknowledgeFailures.get() == 0 && acknowledgeFailures.incrementAndGet() == 1) {
+                throw new IllegalStateException("Unexpected");
+            }
+            super.acknowledge(record);
+        }
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2021 CGA Technologies, a trading name of Charlie Goldsmith Associates Ltd
+ *  All rights reserved, released under the BSD-3 licence.
+ *
+ * CGA Technologies develop and use this software as part of its work
+ *  but the software itself is open-source software; you can redistribute it and/or modify
+ *  it under the terms of the BSD licence below
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice, this
+ *     list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *  3. Neither the name of the copyright holder nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *  THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *  PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS
+ *  BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ *  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ *  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ *  LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ *  OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ *  DAMAGE.
+ *
+ * For more information please see http://opensource.org/licenses/BSD-3-Clause
+ */
+
+package org.cga.sctp.api.audit;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.cga.sctp.api.config.AuditConfiguration;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AuditSpoolTest {
+
+    private static final String DATA = "{\"user\":\"someone-with-a-long-name\"}";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void appendAcknowledgeDeferReplay() throws IOException {
+        final AuditSpool spool = spool(1 << 16, new SimpleMeterRegistry());
+        final AuditEventLog log = log("b");
+        final AuditSpool.Record a = spool.append(log("a"));
+        final AuditSpool.Record b = spool.append(log);
+
+        assertTrue(a.isSpooled());
+        assertFalse(spool.hasDeferred());
+
+        spool.acknowledge(a);
+        spool.defer(b);
+        assertTrue(spool.hasDeferred());
+
+        final List<AuditSpool.Record> replayed = spool.replay(10);
+        assertEquals(1, replayed.size());
+        assertEquals(log.getLogData(), replayed.get(0).getLog().getLogData());
+        assertEquals(log.getCreatedAt(), replayed.get(0).getLog().getCreatedAt());
+        assertEquals(EventType.security, replayed.get(0).getLog().getEventType());
+        // Still deferred until acknowledged
+        assertEquals(1, spool.replay(10).size());
+
+        spool.acknowledge(replayed.get(0));
+        assertFalse(spool.hasDeferred());
+        assertTrue(spool.replay(10).isEmpty());
+    }
+
+    @Test
+    void recoversQueuedAndDeferredRecords() throws IOException {
+        final AuditSpool spool = spool(1 << 16, new SimpleMeterRegistry());
+        spool.acknowledge(spool.append(log("a")));
+        spool.defer(spool.append(log("b")));
+        spool.append(log("c"));
+        spool.close();
+
+        final AuditSpool recovered = spool(1 << 16, new SimpleMeterRegistry());
+        assertTrue(recovered.hasDeferred());
+        assertEquals(List.of(data("b"), data("c")), logData(recovered.replay(10)));
+    }
+
+    @Test
+    void corruptedRecordDiscardsTheRestOfTheSegment() throws IOException {
+        final AuditSpool spool = spool(1 << 16, new SimpleMeterRegistry());
+        spool.append(log("a"));
+        spool.append(log("b"));
+        spool.append(log("c"));
+        spool.close();
+
+        // Flip a byte in the data of the second record
+        final Path segment = segments().get(0);
+        final int frame = frameSize(data("a"));
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            final ByteBuffer buffer = ByteBuffer.allocate(1);
+            channel.read(buffer, frame + frame - 2);
+            buffer.put(0, (byte) (buffer.get(0) ^ 1)).rewind();
+            channel.write(buffer, frame + frame - 2);
+        }
+
+        final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        final AuditSpool recovered = spool(1 << 16, registry);
+        assertEquals(List.of(data("a")), logData(recovered.replay(10)));
+        assertEquals(1.0, registry.counter("audit.spool.corrupt").count());
+    }
+
+    @Test
+    void truncatedRecordDiscardsTheRestOfTheSegment() throws IOException {
+        final AuditSpool spool = spool(1 << 16, new SimpleMeterRegistry());
+        spool.append(log("a"));
+        spool.append(log("b"));
+        spool.close();
+
+        // A crash while the file was extended: the second record is cut off
+        final Path segment = segments().get(0);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(frameSize(data("a")) + 20);
+        }
+
+        final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        final AuditSpool recovered = spool(1 << 16, registry);
+        assertEquals(List.of(data("a")), logData(recovered.replay(10)));
+        assertEquals(1.0, registry.counter("audit.spool.corrupt").count());
+    }
+
+    @Test
+    void deletesSegmentsOnlyWhenSealedAndWritten() throws IOException {
+        // Two records per segment
+        final int segmentSize = 2 * frameSize(data("1")) + 4;
+        final AuditSpool spool = spool(segmentSize, new SimpleMeterRegistry());
+
+        final AuditSpool.Record r1 = spool.append(log("1"));
+        final AuditSpool.Record r2 = spool.append(log("2"));
+        spool.acknowledge(r1);
+        spool.acknowledge(r2);
+        // Fully written but still the active segment
+        assertEquals(1, segments().size());
+
+        final AuditSpool.Record r3 = spool.append(log("3"));
+        assertEquals(List.of(segmentName(1)), segmentNames());
+
+        final AuditSpool.Record r4 = spool.append(log("4"));
+        spool.append(log("5"));
+        spool.acknowledge(r4);
+        // Sealed, but r3 is not written yet
+        assertEquals(List.of(segmentName(1), segmentName(2)), segmentNames());
+
+        spool.defer(r3);
+        spool.acknowledge(spool.replay(1).get(0));
+        assertEquals(List.of(segmentName(2)), segmentNames());
+    }
+
+    @Test
+    void disabledSpoolDoesNotSpool() throws IOException {
+        final AuditConfiguration configuration = new AuditConfiguration();
+        configuration.getSpool().setEnabled(false);
+        configuration.getSpool().setDirectory(directory.resolve("disabled").toString());
+        final AuditSpool spool = new AuditSpool(configuration, new SimpleMeterRegistry());
+
+        final AuditSpool.Record record = spool.append(log("a"));
+        assertFalse(record.isSpooled());
+        spool.defer(record);
+        assertFalse(spool.hasDeferred());
+        assertFalse(Files.exists(directory.resolve("disabled")));
+    }
+
+    private AuditSpool spool(int segmentSize, SimpleMeterRegistry registry) throws IOException {
+        final AuditConfiguration configuration = new AuditConfiguration();
+        configuration.getSpool().setEnabled(true);
+        configuration.getSpool().setDirectory(directory.toString());
+        configuration.getSpool().setSegmentSize(segmentSize);
+        return new AuditSpool(configuration, registry);
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".spool")).sorted().collect(Collectors.toList());
+        }
+    }
+
+    private List<String> segmentNames() throws IOException {
+        return segments().stream().map(file -> file.getFileName().toString()).collect(Collectors.toList());
+    }
+
+    private static String segmentName(long sequence) {
+        return String.format("audit-%020d.spool", sequence);
+    }
+
+    /**
+     * Header (length, checksum, status) and fixed payload (event type, seconds, nanos) followed by the data.
+     */
+    private static int frameSize(String data) {
+        return 4 + 4 + 1 + 4 + 8 + 4 + data.length();
+    }
+
+    private static List<String> logData(List<AuditSpool.Record> records) {
+        return records.stream().map(record -> record.getLog().getLogData()).collect(Collectors.toList());
+    }
+
+    private static String data(String id) {
+        return DATA.replace("someone", id);
+    }
+
+    private static AuditEventLog log(String id) {
+        final AuditEventLog log = new AuditEventLog();
+        log.setEventType(EventType.security);
+        log.setCreatedAt(LocalDateTime.of(2026, 10, 18, 12, 30, 15, 123_456_789));
+        log.setLogData(data(id));
+        return log;
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2021 CGA Technologies, a trading name of Charlie Goldsmith Associates Ltd
+ *  All rights reserved, released under the BSD-3 licence.
+ *
+ * CGA Technologies develop and use this software as part of its work
+ *  but the software itself is open-source software; you can redistribute it and/or modify
+ *  it under the terms of the BSD licence below
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice, this
+ *     list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *  3. Neither the name of the copyright holder nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *  THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *  PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS
+ *  BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ *  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ *  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ *  LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ *  OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ *  DAMAGE.
+ *
+ * For more information please see http://opensource.org/licenses/BSD-3-Clause
+ */
+
+package org.cga.sctp.api.auth;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.cga.sctp.api.audit.AuditAggregator;
+import org.cga.sctp.api.audit.AuditLogWriter;
+import org.cga.sctp.api.audit.EventType;
+import org.cga.sctp.api.config.AuditConfiguration;
+import org.cga.sctp.api.security.LoginThrottle;
+import org.cga.sctp.api.security.PrincipalCache;
+import org.cga.sctp.api.security.apikey.ApiKeyRegistry;
+import org.cga.sctp.api.security.access_control.UserRole;
+import org.cga.sctp.api.security.session.UserSessionRegistry;
+import org.cga.sctp.api.user.ApiUser;
+import org.cga.sctp.api.user.ApiUserService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class AuthControllerTest {
+
+    private static final int MAX_AUTH_ATTEMPTS = 3;
+
+    @Mock
+    private ApiUserService apiUserService;
+
+    @Mock
+    private AuthService authService;
+
+    @Mock
+    private PrincipalCache principalCache;
+
+    @Mock
+    private UserSessionRegistry sessionRegistry;
+
+    @Mock
+    private LoginThrottle loginThrottle;
+
+    @Mock
+    private RefreshTokenService refreshTokenService;
+
+    @Mock
+    private ApiKeyRegistry apiKeyRegistry;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @InjectMocks
+    private AuthController controller;
+
+    private ApiUser user;
+
+    @BeforeEach
+    void setUp() {
+        final UserRole role = new UserRole();
+        role.setActive(true);
+
+        user = new ApiUser();
+        user.setUserName("alice");
+        user.setActive(true);
+        user.setRole(role);
+
+        ReflectionTestUtils.setField(controller, "taskExecutor", (Executor) Runnable::run);
+        when(loginThrottle.tryAcquire(anyString(), anyString())).thenReturn(true);
+        when(apiUserService.findByUserName("alice")).thenReturn(user);
+        when(authService.getMaxAuthAttempts()).thenReturn(MAX_AUTH_ATTEMPTS);
+        when(authService.authenticateUser(any(), any())).thenReturn(CompletableFuture.completedFuture(false));
+    }
+
+    @Test
+    void wrongPasswordKeepsSessions() {
+        assertEquals(HttpStatus.UNAUTHORIZED, authenticate().getStatusCode());
+
+        assertTrue(user.isActive());
+        assertEquals(1, user.getAuthAttempts());
+        verify(sessionRegistry, never()).revokeByUser(anyString());
+        verify(refreshTokenService, never()).revokeAll(anyString());
+        verify(principalCache, never()).evictUser(anyString());
+        verify(apiKeyRegistry, never()).evictUser(anyString());
+    }
+
+    @Test
+    void wrongPasswordIsAuditedOnce() {
+        final AuditConfiguration configuration = new AuditConfiguration();
+        final AuditConfiguration.AggregationPolicy policy = new AuditConfiguration.AggregationPolicy();
+        policy.setEventType(EventType.security);
+        policy.setKeepFirst(0);
+        configuration.getAggregation().getPolicies().add(policy);
+        final AuditAggregator aggregator = new AuditAggregator(configuration, mock(AuditLogWriter.class),
+                new SimpleMeterRegistry());
+
+        authenticate();
+
+        final List<AuthenticationEvent> events = publishedEvents();
+        assertEquals(1, events.size());
+        assertFalse(events.get(0).isSuccess());
+        assertEquals("Invalid password.", events.get(0).getReason());
+        assertFalse(aggregator.offer(events.get(0)));
+    }
+
+    @Test
+    void lastAttemptLocksTheAccount() {
+        user.setAuthAttempts(MAX_AUTH_ATTEMPTS - 1);
+
+        assertEquals(HttpStatus.FORBIDDEN, authenticate().getStatusCode());
+
+        assertFalse(user.isActive());
+        verify(sessionRegistry).revokeByUser("alice");
+        verify(refreshTokenService).revokeAll("alice");
+        verify(principalCache).evictUser("alice");
+        verify(apiKeyRegistry).evictUser("alice");
+
+        final List<AuthenticationEvent> events = publishedEvents();
+        assertEquals(1, events.size());
+        assertEquals("Max allowed authentication attempts exhausted.", events.get(0).getReason());
+    }
+
+    private ResponseEntity<AuthenticationResponse> authenticate() {
+        final AuthenticationRequest request = new AuthenticationRequest();
+        final MockHttpServletRequest httpRequest = new MockHttpServletRequest();
+        request.setUserName("alice");
+        request.setPassword("wrong");
+        return controller.authenticateApiUser(request, httpRequest).join();
+    }
+
+    private List<AuthenticationEvent> publishedEvents() {
+        final ArgumentCaptor<ApplicationEvent> events = ArgumentCaptor.forClass(ApplicationEvent.class);
+        verify(eventPublisher, atLeast(0)).publishEvent(events.capture());
+        return events.getAllValues().stream()
+                .filter(AuthenticationEvent.class::isInstance)
+                .map(AuthenticationEvent.class::cast)
+                .collect(Collectors.toList());
+    }
+}
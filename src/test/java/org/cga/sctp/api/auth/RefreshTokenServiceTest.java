@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2021 CGA Technologies, a trading name of Charlie Goldsmith Associates Ltd
+ *  All rights reserved, released under the BSD-3 licence.
+ *
+ * CGA Technologies develop and use this software as part of its work
+ *  but the software itself is open-source software; you can redistribute it and/or modify
+ *  it under the terms of the BSD licence below
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice, this
+ *     list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *  3. Neither the name of the copyright holder nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *  THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *  PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS
+ *  BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ *  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ *  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ *  LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ *  OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ *  DAMAGE.
+ *
+ * For more information please see http://opensource.org/licenses/BSD-3-Clause
+ */
+
+package org.cga.sctp.api.auth;
+
+import org.cga.sctp.api.config.AuthConfiguration;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class RefreshTokenServiceTest {
+
+    @Mock
+    private RefreshTokenRepository repository;
+
+    @Spy
+    private AuthConfiguration configuration = new AuthConfiguration();
+
+    @InjectMocks
+    private RefreshTokenService service;
+
+    private String value;
+    private RefreshToken token;
+
+    @BeforeEach
+    void setUp() {
+        final ArgumentCaptor<RefreshToken> saved = ArgumentCaptor.forClass(RefreshToken.class);
+
+        value = service.issue("alice");
+        verify(repository).save(saved.capture());
+        token = saved.getValue();
+        token.setId(1L);
+        when(repository.findBySelector(token.getSelector())).thenReturn(token);
+    }
+
+    @Test
+    void redeemsOnce() {
+        when(repository.markUsed(eq(1L), any())).thenReturn(1);
+
+        assertEquals(RefreshTokenService.Status.VALID, service.redeem(value).getStatus());
+        verify(repository, never()).revokeByUserName(anyString());
+    }
+
+    @Test
+    void revokesAllTokensWhenAUsedTokenIsPresented() {
+        token.setUsedAt(LocalDateTime.now());
+
+        assertEquals(RefreshTokenService.Status.REUSED, service.redeem(value).getStatus());
+        verify(repository, never()).markUsed(any(), any());
+        verify(repository).revokeByUserName("alice");
+    }
+
+    @Test
+    void revokedTokenIsInvalid() {
+        token.setRevoked(true);
+
+        assertEquals(RefreshTokenService.Status.INVALID, service.redeem(value).getStatus());
+        verify(repository, never()).revokeByUserName(anyString());
+    }
+
+    @Test
+    void tokenRevokedWhileRedeemingIsInvalid() {
+        when(repository.markUsed(eq(1L), any())).thenReturn(0);
+        when(repository.findBySelector(token.getSelector())).thenReturn(token, copy(true, null));
+
+        assertEquals(RefreshTokenService.Status.INVALID, service.redeem(value).getStatus());
+        verify(repository, never()).revokeByUserName(anyString());
+    }
+
+    @Test
+    void tokenUsedWhileRedeemingIsReused() {
+        when(repository.markUsed(eq(1L), any())).thenReturn(0);
+        when(repository.findBySelector(token.getSelector())).thenReturn(token, copy(false, LocalDateTime.now()));
+
+        assertEquals(RefreshTokenService.Status.REUSED, service.redeem(value).getStatus());
+        verify(repository).revokeByUserName("alice");
+    }
+
+    private RefreshToken copy(boolean revoked, LocalDateTime usedAt) {
+        final RefreshToken copy = new RefreshToken();
+        copy.setId(token.getId());
+        copy.setSelector(token.getSelector());
+        copy.setTokenHash(token.getTokenHash());
+        copy.setUserName(token.getUserName());
+        copy.setCreatedAt(token.getCreatedAt());
+        copy.setExpiresAt(token.getExpiresAt());
+        copy.setRevoked(revoked);
+        copy.setUsedAt(usedAt);
+        return copy;
+    }
+}
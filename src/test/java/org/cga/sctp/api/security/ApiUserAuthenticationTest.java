@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2021 CGA Technologies, a trading name of Charlie Goldsmith Associates Ltd
+ *  All rights reserved, released under the BSD-3 licence.
+ *
+ * CGA Technologies develop and use this software as part of its work
+ *  but the software itself is open-source software; you can redistribute it and/or modify
+ *  it under the terms of the BSD licence below
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice, this
+ *     list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *  3. Neither the name of the copyright holder nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *  THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *  PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS
+ *  BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ *  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ *  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ *  LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ *  OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ *  DAMAGE.
+ *
+ * For more information please see http://opensource.org/licenses/BSD-3-Clause
+ */
+
+package org.cga.sctp.api.security;
+
+import org.cga.sctp.api.security.access_control.UserRole;
+import org.cga.sctp.api.user.ApiUser;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ApiUserAuthenticationTest {
+
+    @Test
+    void isDetachedFromTheUser() {
+        final ApiUser user = user();
+        final ApiUserAuthentication authentication = authentication(user);
+
+        user.setUserName("bob");
+        user.setFirstName("Bob");
+        user.getRole().setName("guest");
+
+        assertEquals("alice", authentication.getName());
+        assertEquals("alice", authentication.getUser().getUserName());
+        assertEquals("Alice", authentication.getUser().getFirstName());
+        assertEquals("clerk", authentication.getUser().getRoleName());
+        assertSame(authentication.getUser(), authentication.getDetails());
+    }
+
+    @Test
+    void cannotBeChanged() {
+        final ApiUserAuthentication authentication = authentication(user());
+
+        assertThrows(UnsupportedOperationException.class, () -> authentication.setDetails(user()));
+        assertThrows(UnsupportedOperationException.class, () -> authentication.setAuthenticated(false));
+        authentication.eraseCredentials();
+        assertTrue(authentication.isAuthenticated());
+        assertEquals("alice", authentication.getUser().getUserName());
+    }
+
+    private static ApiUserAuthentication authentication(ApiUser user) {
+        return new ApiUserAuthentication(user, RolePermissionSnapshot.of(List.of(user.getRole()), List.of(), List.of()));
+    }
+
+    private static ApiUser user() {
+        final UserRole role = new UserRole();
+        final ApiUser user = new ApiUser();
+        role.setName("clerk");
+        role.setActive(true);
+        user.setUserName("alice");
+        user.setFirstName("Alice");
+        user.setRole(role);
+        return user;
+    }
+}
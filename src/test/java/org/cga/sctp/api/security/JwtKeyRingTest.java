@@ -0,0 +1,232 @@
+/*
+ * Copyright (C) 2021 CGA Technologies, a trading name of Charlie Goldsmith Associates Ltd
+ *  All rights reserved, released under the BSD-3 licence.
+ *
+ * CGA Technologies develop and use this software as part of its work
+ *  but the software itself is open-source software; you can redistribute it and/or modify
+ *  it under the terms of the BSD licence below
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice, this
+ *     list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *  3. Neither the name of the copyright holder nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *  THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *  PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS
+ *  BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ *  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ *  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ *  LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ *  OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ *  DAMAGE.
+ *
+ * For more information please see http://opensource.org/licenses/BSD-3-Clause
+ */
+
+package org.cga.sctp.api.security;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.algorithms.Algorithm;
+import org.cga.sctp.api.config.AppConfiguration;
+import org.cga.sctp.api.config.JwtConfiguration;
+import org.cga.sctp.api.core.AppConstants;
+import org.cga.sctp.api.user.ApiUser;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JwtKeyRingTest {
+
+    private static final String ISSUER = "CGA";
+    private static final String LEGACY_SECRET = "legacy-0123456789abcdef0123456789";
+    private static final String SECRET_1 = "key-1-0123456789abcdef0123456789";
+    private static final String SECRET_2 = "key-2-0123456789abcdef0123456789";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void signsWithActiveKey() {
+        final JwtKeyRing ring = JwtKeyRing.build(configuration(), "k1", List.of(key("k1", SECRET_1), key("k2", SECRET_2)),
+                false);
+        final JwtKeyRing.SigningKey signingKey = ring.getSigningKey();
+
+        assertEquals("k1", signingKey.getKid());
+        assertEquals(Map.of("kid", "k1"), signingKey.getHeader());
+        assertEquals(Set.of("k1", "k2"), ring.getKeyIds());
+        assertNotNull(ring.getVerifier("k1").verify(token("k1", SECRET_1)));
+    }
+
+    @Test
+    void withoutActiveKeySignsWithLegacySecret() {
+        final JwtKeyRing ring = JwtKeyRing.build(configuration(), null, List.of(key("k1", SECRET_1)), false);
+
+        assertNull(ring.getSigningKey().getKid());
+        // Tokens without a kid are verified with jwt.secret
+        assertNotNull(ring.getVerifier(null).verify(token(null, LEGACY_SECRET)));
+    }
+
+    @Test
+    void acceptsUnkeyedTokensOnlyWhenAllowed() {
+        final String unkeyed = token(null, LEGACY_SECRET);
+
+        assertNull(JwtKeyRing.build(configuration(), "k1", List.of(key("k1", SECRET_1)), false).getVerifier(null));
+        assertNotNull(JwtKeyRing.build(configuration(), "k1", List.of(key("k1", SECRET_1)), true)
+                .getVerifier(null).verify(unkeyed));
+
+        final JwtConfiguration configuration = configuration("k1", List.of(key("k1", SECRET_1)));
+        assertNull(new JwtUtil(configuration, new AppConfiguration().gson()).verify(unkeyed));
+        configuration.setAcceptUnkeyedTokens(true);
+        assertNotNull(new JwtUtil(configuration, new AppConfiguration().gson()).verify(unkeyed));
+    }
+
+    @Test
+    void retiresUnkeyedTokensOnReload() throws IOException {
+        final Path keyFile = directory.resolve("keys.json");
+        final JwtConfiguration configuration = configuration();
+        final String unkeyed = token(null, LEGACY_SECRET);
+        configuration.setKeyFile(keyFile.toString());
+        // Ignored in favour of the key file
+        configuration.setAcceptUnkeyedTokens(true);
+
+        Files.writeString(keyFile, "{\"activeKey\":\"k1\",\"acceptUnkeyedTokens\":true,\"keys\":[{\"kid\":\"k1\",\"secret\":\""
+                + SECRET_1 + "\"}]}", StandardCharsets.UTF_8);
+        Files.setLastModifiedTime(keyFile, FileTime.fromMillis(1_000_000L));
+        final JwtUtil jwtUtil = new JwtUtil(configuration, new AppConfiguration().gson());
+        assertNotNull(jwtUtil.verify(unkeyed));
+
+        writeKeyFile(keyFile, 2, "k1", "{\"kid\":\"k1\",\"secret\":\"" + SECRET_1 + "\"}");
+        jwtUtil.reloadKeys();
+        assertNull(jwtUtil.verify(unkeyed));
+    }
+
+    @Test
+    void rejectsUnknownKid() {
+        final JwtUtil jwtUtil = new JwtUtil(configuration("k1", List.of(key("k1", SECRET_1))), new AppConfiguration().gson());
+
+        assertNotNull(jwtUtil.parseJwt(token("k1", SECRET_1)));
+        assertNull(jwtUtil.parseJwt(token("k2", SECRET_1)));
+        assertNull(jwtUtil.verify(token("k2", SECRET_1)));
+        // A known kid does not vouch for a token signed with another key
+        assertNull(jwtUtil.parseJwt(token("k1", SECRET_2)));
+        assertNull(jwtUtil.parseJwt(token(null, SECRET_1)));
+    }
+
+    @Test
+    void verifiesRetiredKeysUntilRemoved() throws IOException {
+        final Path keyFile = directory.resolve("keys.json");
+        final JwtConfiguration configuration = configuration();
+        configuration.setKeyFile(keyFile.toString());
+
+        writeKeyFile(keyFile, 1, "k1", "{\"kid\":\"k1\",\"secret\":\"" + SECRET_1 + "\"}");
+        final JwtUtil jwtUtil = new JwtUtil(configuration, new AppConfiguration().gson());
+        final String token1 = jwtUtil.generateJwt(user()).getToken();
+        assertEquals("k1", JWT.decode(token1).getKeyId());
+        assertNotNull(jwtUtil.verify(token1));
+
+        // Rotate: k2 signs, k1 is retired but still verifies
+        writeKeyFile(keyFile, 2, "k2",
+                "{\"kid\":\"k1\",\"secret\":\"" + SECRET_1 + "\"},{\"kid\":\"k2\",\"secret\":\"" + SECRET_2 + "\"}");
+        jwtUtil.reloadKeys();
+        final String token2 = jwtUtil.generateJwt(user()).getToken();
+        assertEquals("k2", JWT.decode(token2).getKeyId());
+        assertNotNull(jwtUtil.verify(token1));
+        assertNotNull(jwtUtil.verify(token2));
+
+        // An invalid file keeps the current keys
+        writeKeyFile(keyFile, 3, "k3", "{\"kid\":\"k2\",\"secret\":\"" + SECRET_2 + "\"}");
+        jwtUtil.reloadKeys();
+        assertNotNull(jwtUtil.verify(token1));
+        assertEquals("k2", JWT.decode(jwtUtil.generateJwt(user()).getToken()).getKeyId());
+
+        // Remove k1, its tokens are rejected even though they were verified before
+        writeKeyFile(keyFile, 4, "k2", "{\"kid\":\"k2\",\"secret\":\"" + SECRET_2 + "\"}");
+        jwtUtil.reloadKeys();
+        assertNull(jwtUtil.verify(token1));
+        assertNotNull(jwtUtil.verify(token2));
+    }
+
+    @Test
+    void rejectsInvalidKeys() {
+        final JwtConfiguration configuration = configuration();
+
+        assertThrows(IllegalArgumentException.class,
+                () -> JwtKeyRing.build(configuration, "k2", List.of(key("k1", SECRET_1)), false));
+        assertThrows(IllegalArgumentException.class,
+                () -> JwtKeyRing.build(configuration, "k1", List.of(key("k1", "too-short")), false));
+        assertThrows(IllegalArgumentException.class,
+                () -> JwtKeyRing.build(configuration, "k1", List.of(key("k1", SECRET_1), key("k1", SECRET_2)), false));
+        assertThrows(IllegalArgumentException.class,
+                () -> JwtKeyRing.build(configuration, null, List.of(key(null, SECRET_1)), false));
+    }
+
+    private static JwtConfiguration configuration() {
+        final JwtConfiguration configuration = new JwtConfiguration();
+        configuration.setIssuer(ISSUER);
+        configuration.setExpiration(30);
+        configuration.setSecret(LEGACY_SECRET);
+        return configuration;
+    }
+
+    private static JwtConfiguration configuration(String activeKey, List<JwtConfiguration.KeyConfig> keys) {
+        final JwtConfiguration configuration = configuration();
+        configuration.setActiveKey(activeKey);
+        configuration.setKeys(keys);
+        return configuration;
+    }
+
+    private static JwtConfiguration.KeyConfig key(String kid, String secret) {
+        final JwtConfiguration.KeyConfig key = new JwtConfiguration.KeyConfig();
+        key.setKid(kid);
+        key.setSecret(secret);
+        return key;
+    }
+
+    private static ApiUser user() {
+        final ApiUser user = new ApiUser();
+        user.setUserName("tester");
+        user.setFirstName("Test");
+        user.setLastName("User");
+        return user;
+    }
+
+    private static String token(String kid, String secret) {
+        return JWT.create()
+                .withKeyId(kid)
+                .withIssuer(ISSUER)
+                .withSubject("tester")
+                .withExpiresAt(Date.from(Instant.now().plusSeconds(600)))
+                .withClaim(AppConstants.JWT_ACCESS_TOKEN_CLAIM, Map.of("userName", "tester"))
+                .sign(Algorithm.HMAC256(secret));
+    }
+
+    /**
+     * Reloads are triggered by the modification time, which may not change between quick writes.
+     */
+    private static void writeKeyFile(Path keyFile, int version, String activeKey, String keys) throws IOException {
+        Files.writeString(keyFile, "{\"activeKey\":\"" + activeKey + "\",\"keys\":[" + keys + "]}", StandardCharsets.UTF_8);
+        Files.setLastModifiedTime(keyFile, FileTime.fromMillis(1_000_000L * version));
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2021 CGA Technologies, a trading name of Charlie Goldsmith Associates Ltd
+ *  All rights reserved, released under the BSD-3 licence.
+ *
+ * CGA Technologies develop and use this software as part of its work
+ *  but the software itself is open-source software; you can redistribute it and/or modify
+ *  it under the terms of the BSD licence below
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice, this
+ *     list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *  3. Neither the name of the copyright holder nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *  THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *  PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS
+ *  BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ *  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ *  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ *  LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ *  OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ *  DAMAGE.
+ *
+ * For more information please see http://opensource.org/licenses/BSD-3-Clause
+ */
+
+package org.cga.sctp.api.security;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.cga.sctp.api.config.AuthConfiguration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PasswordHashingExecutorTest {
+
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final AtomicInteger started = new AtomicInteger();
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+    private PasswordHashingExecutor executor;
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        executor.shutdown();
+    }
+
+    @Test
+    void skipsQueuedTasksWhoseCallerTimedOut() throws InterruptedException {
+        executor = executor(100);
+        final CompletableFuture<Boolean> running = executor.matchesAsync("a", "a");
+        final CompletableFuture<Boolean> queued = executor.matchesAsync("b", "b");
+
+        assertTimedOut(running);
+        assertTimedOut(queued);
+        // Counted right after the futures complete
+        awaitCount("auth.hashing.timeouts", 2);
+        // The running hash cannot be stopped
+        awaitCount("auth.hashing.abandoned", 1);
+
+        release.countDown();
+        // Runs once the worker is free again, after the skipped task
+        assertTrue(executor.matchesAsync("c", "c").join());
+        assertEquals(2, started.get());
+    }
+
+    @Test
+    void skipsQueuedTasksWhoseCallerStoppedWaiting() throws InterruptedException {
+        executor = executor(10_000);
+        final CompletableFuture<Boolean> running = executor.matchesAsync("a", "a");
+        final CompletableFuture<Boolean> queued = executor.matchesAsync("b", "b");
+
+        queued.cancel(true);
+        release.countDown();
+        assertTrue(running.join());
+        assertTrue(executor.matchesAsync("c", "c").join());
+        assertEquals(2, started.get());
+        assertEquals(0, registry.counter("auth.hashing.abandoned").count());
+    }
+
+    private PasswordHashingExecutor executor(long timeout) {
+        final AuthConfiguration configuration = new AuthConfiguration();
+        configuration.getHashing().setPoolSize(1);
+        configuration.getHashing().setQueueCapacity(4);
+        configuration.getHashing().setTimeout(timeout);
+        return new PasswordHashingExecutor(configuration, new BlockingPasswordEncoder(), registry);
+    }
+
+    private void awaitCount(String name, double expected) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (registry.counter(name).count() < expected && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(expected, registry.counter(name).count());
+    }
+
+    private static void assertTimedOut(CompletableFuture<Boolean> future) throws InterruptedException {
+        final ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof PasswordHashingUnavailableException);
+    }
+
+    /**
+     * Ignores interrupts, like a real hash.
+     */
+    private final class BlockingPasswordEncoder implements PasswordEncoder {
+
+        @Override
+        public String encode(CharSequence rawPassword) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean matches(CharSequence rawPassword, String encodedPassword) {
+            started.incrementAndGet();
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    release.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            return rawPassword.toString().equals(encodedPassword);
+        }
+    }
+}
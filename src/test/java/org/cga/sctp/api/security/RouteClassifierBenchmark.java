@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2021 CGA Technologies, a trading name of Charlie Goldsmith Associates Ltd
+ *  All rights reserved, released under the BSD-3 licence.
+ *
+ * CGA Technologies develop and use this software as part of its work
+ *  but the software itself is open-source software; you can redistribute it and/or modify
+ *  it under the terms of the BSD licence below
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice, this
+ *     list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *  3. Neither the name of the copyright holder nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *  THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *  PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS
+ *  BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ *  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ *  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ *  LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ *  OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ *  DAMAGE.
+ *
+ * For more information please see http://opensource.org/licenses/BSD-3-Clause
+ */
+
+package org.cga.sctp.api.security;
+
+import org.cga.sctp.api.core.AppConstants;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.util.AntPathMatcher;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link RouteClassifier} against evaluating the ant patterns and authentication paths one by one, over a
+ * mix of mostly secured API paths with some documentation and authentication requests.
+ * <p>Run with {@code mvn test-compile} followed by running {@link #main(String[])} on the test classpath.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RouteClassifierBenchmark {
+
+    private static final String[] URIS = {
+            "/locations",
+            "/locations/12",
+            "/locations/12/children",
+            "/locations/code/MW-BT",
+            "/security/permissions/snapshot",
+            "/users/1532",
+            "/households/42/members",
+            "/households/42/members/7",
+            "/locations",
+            "/authenticate",
+            "/authenticate/refresh",
+            "/swagger-ui/index.html",
+            "/swagger-ui/swagger-ui-bundle.js",
+            "/api-doc",
+            "/api-doc/swagger-config",
+            "/v2/api-docs"
+    };
+
+    private RouteClassifier classifier;
+    private AntPathMatcher antPathMatcher;
+
+    @Setup
+    public void setUp() {
+        classifier = new RouteClassifier();
+        antPathMatcher = new AntPathMatcher();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(16)
+    public int classifier() {
+        int secured = 0;
+        for (String uri : URIS) {
+            if (classifier.classify(uri, 0) == RouteClassifier.RouteType.SECURED) {
+                secured++;
+            }
+        }
+        return secured;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(16)
+    public int antMatchers() {
+        int secured = 0;
+        for (String uri : URIS) {
+            if (!uri.equalsIgnoreCase(AppConstants.AUTHENTICATION_PATH)
+                    && !uri.equalsIgnoreCase(AppConstants.REFRESH_PATH)
+                    && !matchesAny(uri)) {
+                secured++;
+            }
+        }
+        return secured;
+    }
+
+    private boolean matchesAny(String uri) {
+        for (String pattern : AppConstants.PUBLIC_PATHS) {
+            if (antPathMatcher.match(pattern, uri)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(RouteClassifierBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2021 CGA Technologies, a trading name of Charlie Goldsmith Associates Ltd
+ *  All rights reserved, released under the BSD-3 licence.
+ *
+ * CGA Technologies develop and use this software as part of its work
+ *  but the software itself is open-source software; you can redistribute it and/or modify
+ *  it under the terms of the BSD licence below
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice, this
+ *     list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *  3. Neither the name of the copyright holder nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *  THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *  PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS
+ *  BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ *  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ *  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ *  LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ *  OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ *  DAMAGE.
+ *
+ * For more information please see http://opensource.org/licenses/BSD-3-Clause
+ */
+
+package org.cga.sctp.api.security;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import static org.cga.sctp.api.security.RouteClassifier.RouteType.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class RouteClassifierTest {
+
+    private final RouteClassifier classifier = new RouteClassifier();
+
+    @Test
+    void publicPaths() {
+        assertEquals(PUBLIC, classifier.classify("/v2/api-docs", 0));
+        assertEquals(PUBLIC, classifier.classify("/swagger-ui.html", 0));
+        assertEquals(PUBLIC, classifier.classify("/api-doc.yaml", 0));
+        // A trailing /** matches the path itself and everything below it
+        assertEquals(PUBLIC, classifier.classify("/swagger-ui", 0));
+        assertEquals(PUBLIC, classifier.classify("/swagger-ui/", 0));
+        assertEquals(PUBLIC, classifier.classify("/swagger-ui/index.html", 0));
+        assertEquals(PUBLIC, classifier.classify("/api-doc/swagger-config", 0));
+        assertEquals(PUBLIC, classifier.classify("/webjars/a/b/c.js", 0));
+    }
+
+    @Test
+    void authenticationPaths() {
+        assertEquals(AUTHENTICATION, classifier.classify("/authenticate", 0));
+        assertEquals(AUTHENTICATION, classifier.classify("/authenticate/", 0));
+        assertEquals(AUTHENTICATION, classifier.classify("/authenticate/refresh", 0));
+    }
+
+    @Test
+    void securedPaths() {
+        assertEquals(SECURED, classifier.classify("/", 0));
+        assertEquals(SECURED, classifier.classify("", 0));
+        assertEquals(SECURED, classifier.classify("/users/12", 0));
+        assertEquals(SECURED, classifier.classify("/audit/events", 0));
+        // Exact routes do not cover what is below or next to them
+        assertEquals(SECURED, classifier.classify("/authenticate/other", 0));
+        assertEquals(SECURED, classifier.classify("/authenticate/refresh/x", 0));
+        assertEquals(SECURED, classifier.classify("/v2/api-docs/x", 0));
+        assertEquals(SECURED, classifier.classify("/v2", 0));
+        // Segments must match whole
+        assertEquals(SECURED, classifier.classify("/authenticated", 0));
+        assertEquals(SECURED, classifier.classify("/swagger-uix/index.html", 0));
+        assertEquals(SECURED, classifier.classify("/users/swagger-ui/index.html", 0));
+    }
+
+    @Test
+    void matchesCaseInsensitively() {
+        assertEquals(AUTHENTICATION, classifier.classify("/Authenticate", 0));
+        assertEquals(AUTHENTICATION, classifier.classify("/AUTHENTICATE/REFRESH", 0));
+        assertEquals(PUBLIC, classifier.classify("/Swagger-UI/index.html", 0));
+    }
+
+    @Test
+    void skipsContextPath() {
+        assertEquals(AUTHENTICATION, classifier.classify("/api/authenticate", 4));
+        assertEquals(PUBLIC, classifier.classify("/api/swagger-ui/index.html", 4));
+        assertEquals(SECURED, classifier.classify("/api/users", 4));
+        assertEquals(SECURED, classifier.classify("/api/authenticate", 0));
+
+        final MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/authenticate");
+        request.setContextPath("/api");
+        assertEquals(AUTHENTICATION, classifier.classify(request));
+        assertTrue(classifier.matcher(AUTHENTICATION, HttpMethod.POST).matches(request));
+        assertFalse(classifier.matcher(AUTHENTICATION, HttpMethod.GET).matches(request));
+        assertFalse(classifier.matcher(SECURED, null).matches(request));
+    }
+}
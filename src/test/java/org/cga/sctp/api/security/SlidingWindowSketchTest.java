@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2021 CGA Technologies, a trading name of Charlie Goldsmith Associates Ltd
+ *  All rights reserved, released under the BSD-3 licence.
+ *
+ * CGA Technologies develop and use this software as part of its work
+ *  but the software itself is open-source software; you can redistribute it and/or modify
+ *  it under the terms of the BSD licence below
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice, this
+ *     list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *  3. Neither the name of the copyright holder nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *  THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *  PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS
+ *  BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ *  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ *  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ *  LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ *  OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ *  DAMAGE.
+ *
+ * For more information please see http://opensource.org/licenses/BSD-3-Clause
+ */
+
+package org.cga.sctp.api.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SlidingWindowSketchTest {
+
+    @Test
+    void murmur3MatchesReferenceValues() {
+        assertEquals(0, SlidingWindowSketch.murmur3(new byte[0], 0));
+        assertEquals(0x514E28B7, SlidingWindowSketch.murmur3(new byte[0], 1));
+        assertEquals(0x248BFA47, SlidingWindowSketch.murmur3("hello".getBytes(StandardCharsets.UTF_8), 0));
+        assertEquals(0x2E4FF723, SlidingWindowSketch.murmur3(
+                "The quick brown fox jumps over the lazy dog".getBytes(StandardCharsets.UTF_8), 0));
+    }
+
+    @Test
+    void countsWithinWindow() {
+        final SlidingWindowSketch sketch = new SlidingWindowSketch(60_000, 6, 3, 1024);
+
+        for (int i = 1; i <= 5; i++) {
+            assertEquals(i, sketch.increment("user", 1_000));
+        }
+        assertEquals(5, sketch.estimate("user", 59_999));
+        assertEquals(0, sketch.estimate("user", 70_000));
+    }
+
+    @Test
+    void equalHashCodesDoNotShareCounters() {
+        // "Aa" and "BB" have the same String.hashCode(), and so do all strings built from them
+        final String[] keys = {"AaAaAa", "AaAaBB", "AaBBAa", "BBAaAa", "AaBBBB", "BBAaBB", "BBBBAa", "BBBBBB"};
+        final SlidingWindowSketch sketch = new SlidingWindowSketch(60_000, 6, 3, 16384);
+
+        for (String key : keys) {
+            assertEquals(keys[0].hashCode(), key.hashCode());
+        }
+        for (int i = 0; i < 100; i++) {
+            sketch.increment(keys[0], 1_000);
+        }
+
+        assertEquals(100, sketch.estimate(keys[0], 1_000));
+        for (int i = 1; i < keys.length; i++) {
+            assertEquals(0, sketch.estimate(keys[i], 1_000), keys[i]);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2021 CGA Technologies, a trading name of Charlie Goldsmith Associates Ltd
+ *  All rights reserved, released under the BSD-3 licence.
+ *
+ * CGA Technologies develop and use this software as part of its work
+ *  but the software itself is open-source software; you can redistribute it and/or modify
+ *  it under the terms of the BSD licence below
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice, this
+ *     list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *  3. Neither the name of the copyright holder nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ *  AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *  THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *  PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS
+ *  BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ *  CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ *  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ *  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ *  LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ *  OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ *  DAMAGE.
+ *
+ * For more information please see http://opensource.org/licenses/BSD-3-Clause
+ */
+
+package org.cga.sctp.api.security.apikey;
+
+import org.cga.sctp.api.auth.AuthService;
+import org.cga.sctp.api.config.AuthConfiguration;
+import org.cga.sctp.api.user.ApiUser;
+import org.cga.sctp.api.user.ApiUserService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ApiKeyRegistryTest {
+
+    @Mock
+    private ApiKeyRepository repository;
+
+    @Mock
+    private ApiUserService userService;
+
+    @Mock
+    private AuthService authService;
+
+    @Spy
+    private AuthConfiguration configuration = new AuthConfiguration();
+
+    @InjectMocks
+    private ApiKeyRegistry registry;
+
+    private final List<ApiKey> keys = new ArrayList<>();
+    private final ApiUser alice = user("alice");
+    private final ApiUser bob = user("bob");
+
+    @BeforeEach
+    void setUp() {
+        configuration.getApiKey().setSecret("0123456789abcdef0123456789abcdef");
+        when(repository.save(any())).thenAnswer(invocation -> {
+            keys.add(invocation.getArgument(0));
+            return invocation.getArgument(0);
+        });
+        when(repository.findActive(any())).thenAnswer(invocation -> List.copyOf(keys));
+        when(userService.findAllByUserNames(any())).thenReturn(List.of(alice, bob));
+
+        registry.initialize();
+        registry.create("alice's client", alice, null);
+        registry.create("bob's client", bob, null);
+    }
+
+    @Test
+    void evictsTheKeysOfAUser() {
+        final String key = registry.create("alice's other client", alice, null).getKey();
+        assertEquals(3, registry.size());
+
+        registry.evictUser("alice");
+        assertEquals(1, registry.size());
+        assertNull(registry.authenticate(key));
+
+        registry.evictUser("nobody");
+        assertEquals(1, registry.size());
+    }
+
+    @Test
+    void skipsInactiveUsersOnReload() {
+        assertEquals(2, registry.size());
+
+        alice.setActive(false);
+        registry.reload();
+        assertEquals(1, registry.size());
+    }
+
+    private static ApiUser user(String userName) {
+        final ApiUser user = new ApiUser();
+        user.setUserName(userName);
+        user.setActive(true);
+        return user;
+    }
+}
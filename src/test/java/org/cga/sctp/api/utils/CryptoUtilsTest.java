@@ -37,6 +37,10 @@ package org.cga.sctp.api.utils;
 
 import org.junit.jupiter.api.Test;
 
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class CryptoUtilsTest {
@@ -50,4 +54,52 @@ class CryptoUtilsTest {
         random = CryptoUtils.genRandomString(length);
         assertEquals(64, random.length());
     }
-}
\ No newline at end of file
+
+    @Test
+    void genRandomStrings() {
+        String[] strings;
+        Set<String> unique;
+
+        strings = CryptoUtils.genRandomStrings(1000, 15);
+        unique = new HashSet<>(Arrays.asList(strings));
+
+        assertEquals(1000, strings.length);
+        assertEquals(1000, unique.size());
+        for (String string : strings) {
+            assertEquals(15, string.length());
+        }
+    }
+
+    @Test
+    void genRandomStringOddLengths() {
+        for (int length = 0; length < 10; length++) {
+            assertEquals(length, CryptoUtils.genRandomString(length).length());
+        }
+    }
+
+    /**
+     * Chi-squared goodness of fit test against a uniform distribution over the 64 character alphabet.
+     */
+    @Test
+    void genRandomStringIsUniform() {
+        final int samples = 64 * 10_000;
+        final int[] counts = new int[128];
+        final Set<Character> alphabet = new HashSet<>();
+        final double expected = samples / 64.0;
+        double chiSquared = 0;
+
+        for (char c : CryptoUtils.genRandomString(samples).toCharArray()) {
+            counts[c]++;
+            alphabet.add(c);
+        }
+
+        assertEquals(64, alphabet.size());
+
+        for (char c : alphabet) {
+            chiSquared += Math.pow(counts[c] - expected, 2) / expected;
+        }
+
+        // 63 degrees of freedom; 130 corresponds to p < 0.000001
+        assertTrue(chiSquared < 130, "Chi-squared statistic too high: " + chiSquared);
+    }
+}